@@ -0,0 +1,108 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.MflContext;
+import com.myfirstlanguage.mfl.MflEngine;
+import com.myfirstlanguage.mfl.ScriptCache;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+
+/*
+ * Scripts per second when many independent scripts share one engine and a
+ * thread pool, each in its own context. Run it with threads going up to the
+ * number of cores to see how it scales. The same scripts are run on every
+ * invocation, so with cached=true only the first one pays for the front end.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextBenchmark {
+    private static final int SCRIPTS = 1000;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    @Param({ "TREE", "VM", "NODES" })
+    public MflEngine.Kind kind;
+
+    @Param({ "false", "true" })
+    public boolean cached;
+
+    private final OutputSink discard = new OutputSink() {
+        @Override
+        public void println(String text) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+    private final PrintStream noErrors = new PrintStream(OutputStream.nullOutputStream());
+
+    private MflEngine engine;
+    private ExecutorService pool;
+    private String[] sources;
+
+    @Setup
+    public void setUp() {
+        engine = new MflEngine(kind, cached ? new ScriptCache(1 << 20) : null);
+        pool = Executors.newFixedThreadPool(threads);
+        sources = new String[SCRIPTS];
+        for (int i = 0; i < SCRIPTS; i++) {
+            sources[i] = "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                    + "var total = 0;\n"
+                    + "for (var i = 0; i < 50; i = i + 1) total = total + i * " + i + ";\n"
+                    + "print fib(12) + total;\n";
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCRIPTS)
+    public int runScripts() throws InterruptedException, ExecutionException {
+        List<Future<Boolean>> results = new ArrayList<>(SCRIPTS);
+        for (String source : sources) {
+            results.add(pool.submit(() -> {
+                MflContext context = engine.newContext(discard, noErrors);
+                context.eval(source);
+                return !context.reporter().hadError() && !context.reporter().hadRuntimeError();
+            }));
+        }
+
+        int ok = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get())
+                ok++;
+        }
+        return ok;
+    }
+}
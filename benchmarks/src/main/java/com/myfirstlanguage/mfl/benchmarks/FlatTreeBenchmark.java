@@ -0,0 +1,78 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.flat.FlatInterpreter;
+import com.myfirstlanguage.mfl.flat.FlatTree;
+import com.myfirstlanguage.mfl.interpreter.Interpreter;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * A big generated script run from the AST by the tree-walker and from its
+ * FlatTree, and what encoding the FlatTree costs. The program is lexed,
+ * parsed and resolved up front.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlatTreeBenchmark {
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    private final OutputSink discard = new OutputSink() {
+        @Override
+        public void println(String text) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+
+    private List<Stmt> statements;
+    private FlatTree tree;
+
+    @Setup
+    public void setUp() {
+        statements = Programs.frontEnd(Programs.generate(size));
+        tree = FlatTree.encode(statements);
+    }
+
+    @Benchmark
+    public FlatTree encode() {
+        return FlatTree.encode(statements);
+    }
+
+    @Benchmark
+    public Interpreter runTree() {
+        Interpreter interpreter = new Interpreter(Programs.reporter());
+        interpreter.setOutput(discard);
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+
+    @Benchmark
+    public FlatInterpreter runFlat() {
+        FlatInterpreter interpreter = new FlatInterpreter(Programs.reporter());
+        interpreter.setOutput(discard);
+        interpreter.interpret(tree);
+        return interpreter;
+    }
+}
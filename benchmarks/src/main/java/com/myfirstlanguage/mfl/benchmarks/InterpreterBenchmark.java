@@ -0,0 +1,45 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.interpreter.Interpreter;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+// Only interpret() is measured, the program is lexed, parsed and resolved up front.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+    @Param({ "fib", "nestedLoops", "stringBuilding", "smallCalls", "closures", "blockLocals" })
+    public String program;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        statements = Programs.frontEnd(Programs.named(program));
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        Interpreter interpreter = new Interpreter(Programs.reporter());
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+}
@@ -0,0 +1,66 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.lexer.Lexer;
+import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.lexer.TokenBuffer;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+    @Param({ "1000000", "8000000" })
+    public int sourceSize;
+
+    private String source;
+
+    // Reported next to ops/s: megabytes of source lexed per second.
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        source = Programs.generate(sourceSize);
+    }
+
+    @Benchmark
+    public List<Token> scanTokens(Bytes bytes) {
+        List<Token> tokens = new Lexer(source, Programs.reporter()).scanTokens();
+        bytes.megabytes += source.length() / 1_000_000.0;
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenBuffer scanTokenBuffer(Bytes bytes) {
+        TokenBuffer tokens = new Lexer(source, Programs.reporter()).scanTokenBuffer();
+        bytes.megabytes += source.length() / 1_000_000.0;
+        return tokens;
+    }
+}
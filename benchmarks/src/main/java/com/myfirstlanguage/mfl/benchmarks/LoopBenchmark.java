@@ -0,0 +1,69 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.MflContext;
+import com.myfirstlanguage.mfl.MflEngine;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * The loop programs on every engine. What to look at is mostly
+ * gc.alloc.rate.norm, the bytes each run allocates, which shows whether
+ * loop bodies are making a new environment every time round.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoopBenchmark {
+    @Param({ "nestedLoops", "blockLocals" })
+    public String program;
+
+    @Param({ "TREE", "VM", "NODES", "FLAT" })
+    public MflEngine.Kind kind;
+
+    private final OutputSink discard = new OutputSink() {
+        @Override
+        public void println(String text) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+    private final PrintStream noErrors = new PrintStream(OutputStream.nullOutputStream());
+
+    private MflEngine engine;
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        engine = new MflEngine(kind, null);
+        statements = Programs.frontEnd(Programs.named(program));
+    }
+
+    @Benchmark
+    public MflContext run() {
+        MflContext context = engine.newContext(discard, noErrors);
+        context.execute(statements);
+        return context;
+    }
+}
@@ -0,0 +1,81 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.interpreter.ChannelSink;
+import com.myfirstlanguage.mfl.interpreter.Interpreter;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+// A program that does little but print, written to /dev/null so the system calls are real.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputBenchmark {
+    // "printStream" is what System.out does, the others are ChannelSink policies
+    @Param({ "printStream", "size", "time", "exit" })
+    public String sink;
+
+    private List<Stmt> statements;
+    private FileChannel channel;
+    private OutputSink output;
+
+    @Setup
+    public void setUp() throws IOException {
+        statements = Programs.frontEnd(""
+                + "for (var i = 0; i < 100000; i = i + 1) print i;\n");
+        channel = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+        output = sink(sink);
+    }
+
+    private OutputSink sink(String name) throws FileNotFoundException {
+        switch (name) {
+            case "size":
+                return ChannelSink.flushEvery(channel, ChannelSink.DEFAULT_CAPACITY);
+            case "time":
+                return ChannelSink.flushAfter(channel, 50);
+            case "exit":
+                return ChannelSink.flushAtExit(channel);
+            default:
+                return OutputSink.of(new PrintStream(new FileOutputStream("/dev/null"), true));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        Interpreter interpreter = new Interpreter(Programs.reporter());
+        interpreter.setOutput(output);
+        interpreter.interpret(statements);
+        output.flush();
+        return interpreter;
+    }
+}
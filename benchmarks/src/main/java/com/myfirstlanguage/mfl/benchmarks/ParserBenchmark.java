@@ -0,0 +1,51 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.lexer.Lexer;
+import com.myfirstlanguage.mfl.lexer.TokenBuffer;
+import com.myfirstlanguage.mfl.paser.Parser;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({ "1000000" })
+    public int sourceSize;
+
+    // a whole program, or only long expressions
+    @Param({ "program", "expressions" })
+    public String shape;
+
+    private TokenBuffer tokens;
+
+    @Setup
+    public void setUp() {
+        String source = shape.equals("program")
+                ? Programs.generate(sourceSize)
+                : Programs.generateExpressions(sourceSize);
+        tokens = new Lexer(source, Programs.reporter()).scanTokenBuffer();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, Programs.reporter()).parse();
+    }
+}
@@ -0,0 +1,115 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.util.List;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.MflEngine;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+// MFL programs the benchmarks run, and the front end to get them ready.
+final class Programs {
+    private Programs() {
+    }
+
+    static final String FIB = ""
+            + "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+            + "var result = fib(20);\n";
+
+    static final String NESTED_LOOPS = ""
+            + "var total = 0;\n"
+            + "for (var i = 0; i < 300; i = i + 1) {\n"
+            + "  for (var j = 0; j < 300; j = j + 1) {\n"
+            + "    total = total + i * j;\n"
+            + "  }\n"
+            + "}\n";
+
+    static final String STRING_BUILDING = ""
+            + "var s = \"\";\n"
+            + "var i = 0;\n"
+            + "while (i < 2000) { s = s + \"ab\"; i = i + 1; }\n";
+
+    static final String SMALL_CALLS = ""
+            + "fun add(a, b) { return a + b; }\n"
+            + "fun inc(a) { return add(a, 1); }\n"
+            + "fun zero() { return 0; }\n"
+            + "var x = zero();\n"
+            + "for (var i = 0; i < 20000; i = i + 1) { x = inc(x); }\n";
+
+    static final String CLOSURES = ""
+            + "fun makeCounter(step) {\n"
+            + "  var count = 0;\n"
+            + "  fun next() { count = count + step; return count; }\n"
+            + "  return next;\n"
+            + "}\n"
+            + "var total = 0;\n"
+            + "for (var i = 0; i < 2000; i = i + 1) {\n"
+            + "  var counter = makeCounter(i);\n"
+            + "  for (var j = 0; j < 10; j = j + 1) { total = total + counter(); }\n"
+            + "}\n";
+
+    // a local declared in the body of a loop that runs 100000 times
+    static final String BLOCK_LOCALS = ""
+            + "var total = 0;\n"
+            + "for (var i = 0; i < 100000; i = i + 1) {\n"
+            + "  var square = i * i;\n"
+            + "  if (square > total) { total = total + 1; }\n"
+            + "}\n";
+
+    static String named(String name) {
+        switch (name) {
+            case "fib": return FIB;
+            case "nestedLoops": return NESTED_LOOPS;
+            case "stringBuilding": return STRING_BUILDING;
+            case "smallCalls": return SMALL_CALLS;
+            case "closures": return CLOSURES;
+            case "blockLocals": return BLOCK_LOCALS;
+            default: throw new IllegalArgumentException("No program called " + name);
+        }
+    }
+
+    // A big made-up source file, about size characters long, using most of the syntax.
+    static String generate(int size) {
+        StringBuilder source = new StringBuilder(size + 256);
+        int n = 0;
+        while (source.length() < size) {
+            source.append("// helper number ").append(n).append('\n');
+            source.append("fun helper").append(n).append("(a, b, c) {\n");
+            source.append("  var total = 0;\n");
+            source.append("  /* count up to a */\n");
+            source.append("  for (var i = 0; i < a; i = i + 1) {\n");
+            source.append("    if (i >= b and !(i == c)) { total = total + i * 2.5; }\n");
+            source.append("    else { total = total - (i / 3); }\n");
+            source.append("  }\n");
+            source.append("  var label = \"helper ").append(n).append(" done\";\n");
+            source.append("  while (total > 1000) total = total / 2;\n");
+            source.append("  return total;\n");
+            source.append("}\n");
+            source.append("var result").append(n).append(" = helper").append(n).append("(10, 2, 5);\n");
+            n++;
+        }
+        return source.toString();
+    }
+
+    // Like generate(), but nothing except long expressions.
+    static String generateExpressions(int size) {
+        StringBuilder source = new StringBuilder(size + 256);
+        int n = 0;
+        while (source.length() < size) {
+            source.append("var e").append(n).append(" = (a + b * ").append(n).append(" - -c) / (d >= 1 and !e");
+            source.append(" or f(g, h + 1, (i)) == nil) * ((j - k) * (l + m) < 2 * n");
+            source.append(" != (o <= p)) + q(r)(s) - \"t\";\n");
+            n++;
+        }
+        return source.toString();
+    }
+
+    // Errors go straight to the console, nothing in here should have any.
+    static ErrorReporter reporter() {
+        return new ErrorReporter(OutputSink.of(System.out), System.err);
+    }
+
+    static List<Stmt> frontEnd(String source) {
+        return new MflEngine().compile(source, reporter());
+    }
+}
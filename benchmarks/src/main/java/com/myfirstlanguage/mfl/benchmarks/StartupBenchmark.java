@@ -0,0 +1,79 @@
+package com.myfirstlanguage.mfl.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.myfirstlanguage.mfl.MflEngine;
+import com.myfirstlanguage.mfl.paser.ProgramFile;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Time from a script file on disk to a program ready for its first
+ * statement, either through the whole front end, through the front end
+ * skipping function bodies until they're called, or by loading the .mflc
+ * file saved by an earlier run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({ "100000", "1000000", "10000000" })
+    public int sourceSize;
+
+    private final MflEngine engine = new MflEngine();
+    private final MflEngine lazyEngine = new MflEngine(MflEngine.Kind.TREE, null, true);
+    private Path directory;
+    private Path script;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mfl-startup");
+        script = directory.resolve("big.mfl");
+        Files.writeString(script, Programs.generate(sourceSize));
+        engine.compile(script, Programs.reporter()); // leaves big.mflc behind
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(ProgramFile.pathFor(script));
+        Files.deleteIfExists(script);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public List<Stmt> fromSource() throws IOException {
+        byte[] bytes = Files.readAllBytes(script);
+        return engine.compile(new String(bytes, Charset.defaultCharset()), Programs.reporter());
+    }
+
+    @Benchmark
+    public List<Stmt> fromSourceLazily() throws IOException {
+        byte[] bytes = Files.readAllBytes(script);
+        return lazyEngine.compile(new String(bytes, Charset.defaultCharset()), Programs.reporter());
+    }
+
+    @Benchmark
+    public List<Stmt> fromMflc() throws IOException {
+        return engine.compile(script, Programs.reporter());
+    }
+}
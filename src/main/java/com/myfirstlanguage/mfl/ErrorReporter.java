@@ -0,0 +1,69 @@
+package com.myfirstlanguage.mfl;
+
+import java.io.PrintStream;
+
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.monitoring.MflMetrics;
+import com.myfirstlanguage.mfl.monitoring.RuntimeErrorEvent;
+
+/*
+ * Collects the errors of one context. Everything from the lexer to the
+ * engines reports here instead of through anything static, so scripts in
+ * different contexts can't see each other's errors.
+ */
+public class ErrorReporter {
+    private final OutputSink output;
+    private final PrintStream err;
+    private boolean hadError = false;
+    private boolean hadRuntimeError = false;
+
+    public ErrorReporter(OutputSink output, PrintStream err) {
+        this.output = output;
+        this.err = err;
+    }
+
+    public boolean hadError() {
+        return hadError;
+    }
+
+    public boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    public void reset() {
+        hadError = false;
+        hadRuntimeError = false;
+    }
+
+    public void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    public void error(Token token, String message) {
+        report(token.line, token.lexeme, message);
+    }
+
+    // Everything printed so far has to come out before anything on stderr.
+    public void runtimeError(RuntimeError error) {
+        output.flush();
+        err.println(error.getMessage() +
+                "\n[line " + error.line + "]");
+        hadRuntimeError = true;
+
+        MflMetrics.INSTANCE.runtimeError();
+        RuntimeErrorEvent event = new RuntimeErrorEvent();
+        if (event.shouldCommit()) {
+            event.message = error.getMessage();
+            event.line = error.line;
+            event.commit();
+        }
+    }
+
+    private void report(int line, String identifier, String message) {
+        hadError = true;
+        output.flush();
+        err.println("Error(line:" + line + ") " + identifier + ", " + message);
+    }
+}
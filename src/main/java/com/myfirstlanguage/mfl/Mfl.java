@@ -3,42 +3,107 @@ package com.myfirstlanguage.mfl;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
-import com.myfirstlanguage.mfl.lexer.Token;
-import com.myfirstlanguage.mfl.paser.Expr;
-import com.myfirstlanguage.mfl.paser.Parser;
-import com.myfirstlanguage.mfl.paser.Stmt;
-import com.myfirstlanguage.mfl.lexer.Lexer;
-import com.myfirstlanguage.mfl.interpreter.Interpreter;
-import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.interpreter.ChannelSink;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.Profiler;
 
 public class Mfl {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static MflEngine.Kind kind = MflEngine.Kind.TREE; // or --vm / --nodes / --flat
+    private static boolean stream = false;
+    private static boolean mapped = false;
+    private static boolean precompiled = true; // use .mflc files unless --no-mflc
+    private static boolean lazy = false; // parse function bodies when first called
+    private static OutputSink output = OutputSink.of(System.out);
+    private static String profile = null; // where --profile puts the collapsed stacks
+    private static Profiler profiler = null;
+    private static MflContext context;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                kind = MflEngine.Kind.VM;
+            } else if (arg.equals("--nodes")) {
+                kind = MflEngine.Kind.NODES;
+            } else if (arg.equals("--flat")) {
+                kind = MflEngine.Kind.FLAT;
+            } else if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.equals("--mmap")) {
+                stream = true;
+                mapped = true;
+            } else if (arg.equals("--no-mflc")) {
+                precompiled = false;
+            } else if (arg.equals("--lazy")) {
+                lazy = true;
+            } else if (arg.equals("--profile")) {
+                profile = "profile.collapsed";
+            } else if (arg.startsWith("--profile=")) {
+                profile = arg.substring("--profile=".length());
+            } else if (arg.equals("--buffered")) {
+                output = ChannelSink.flushEvery(ChannelSink.stdout(), ChannelSink.DEFAULT_CAPACITY);
+            } else if (arg.startsWith("--buffered=")) {
+                output = bufferedSink(arg.substring("--buffered=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+
+        context = new MflEngine(kind, null, lazy).newContext(output, System.err);
+        if (profile != null) {
+            if (kind != MflEngine.Kind.TREE) {
+                System.out.println("--profile only works with the tree-walker.");
+                System.exit(64);
+            }
+            profiler = new Profiler();
+            context.setProfiler(profiler);
+        }
+
+        if (files.size() > 1) {
+            System.out.println("Usage: jlox [--vm | --nodes | --flat] [--stream | --mmap] [--no-mflc] [--lazy]"
+                    + " [--buffered[=exit | <bytes> | <millis>ms]] [--profile[=<file>]] [script]");
             System.exit(64); // [64]
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        } else if (files.size() == 1 && stream) {
+            streamFile(files.get(0));
+        } else if (files.size() == 1) {
+            runFile(files.get(0));
         } else {
             runPrompt();
         }
     }
 
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        if (precompiled) {
+            context.eval(Paths.get(path));
+        } else {
+            byte[] bytes = Files.readAllBytes(Paths.get(path));
+            context.eval(new String(bytes, Charset.defaultCharset()));
+        }
+        exit();
+    }
+
+    private static void streamFile(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path))) {
+            context.stream(channel, mapped);
+        }
+        exit();
+    }
+
+    private static void exit() throws IOException {
+        output.flush();
+        writeProfile();
 
-        if (hadError)
+        if (context.reporter().hadError())
             System.exit(65);
-        if (hadRuntimeError)
+        if (context.reporter().hadRuntimeError())
             System.exit(70);
     }
 
@@ -52,42 +117,37 @@ public class Mfl {
             String line = reader.readLine();
             if (line == null)
                 break;
-            run(line);
-            hadError = false;
+            context.eval(line);
+            output.flush();
+            context.reporter().reset();
         }
+        writeProfile();
     }
 
-    // The heart of our code
-    private static void run(String source) {
-        Lexer lexer = new Lexer(source);
-        List<Token> tokens = lexer.scanTokens();
-
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-
-        // Stop if there was a syntax error.
-        if (hadError)
+    // The report goes to stderr and the collapsed stacks to the --profile file.
+    private static void writeProfile() throws IOException {
+        if (profiler == null)
             return;
-
-        interpreter.interpret(statements);
-    }
-
-    public static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-                "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
-    }
-
-    static public void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    static public void error(Token token, String message) {
-        report(token.line, token.lexeme, message);
+        profiler.writeReport(System.err);
+        try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(profile)))) {
+            profiler.writeCollapsedStacks(out);
+        }
+        System.err.println("Collapsed stacks written to " + profile + ".");
     }
 
-    private static void report(int line, String identifier, String message) {
-        hadError = true;
-        System.err.println("Error(line:" + line + ") " + identifier + ", " + message);
+    // --buffered=exit, --buffered=<bytes> or --buffered=<millis>ms
+    private static OutputSink bufferedSink(String policy) {
+        if (policy.equals("exit"))
+            return ChannelSink.flushAtExit(ChannelSink.stdout());
+        try {
+            if (policy.endsWith("ms"))
+                return ChannelSink.flushAfter(ChannelSink.stdout(),
+                        Long.parseLong(policy.substring(0, policy.length() - 2)));
+            return ChannelSink.flushEvery(ChannelSink.stdout(), Integer.parseInt(policy));
+        } catch (NumberFormatException e) {
+            System.out.println("Unknown flush policy '" + policy + "'.");
+            System.exit(64);
+            return null;
+        }
     }
 }
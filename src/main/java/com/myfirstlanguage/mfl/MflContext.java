@@ -0,0 +1,163 @@
+package com.myfirstlanguage.mfl;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.myfirstlanguage.mfl.flat.FlatInterpreter;
+import com.myfirstlanguage.mfl.interpreter.Interpreter;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.Profiler;
+import com.myfirstlanguage.mfl.interpreter.Resolver;
+import com.myfirstlanguage.mfl.lexer.Lexer;
+import com.myfirstlanguage.mfl.monitoring.MflMetrics;
+import com.myfirstlanguage.mfl.monitoring.ScriptEvent;
+import com.myfirstlanguage.mfl.nodes.NodeInterpreter;
+import com.myfirstlanguage.mfl.paser.Optimizer;
+import com.myfirstlanguage.mfl.paser.Parser;
+import com.myfirstlanguage.mfl.paser.Stmt;
+import com.myfirstlanguage.mfl.vm.VM;
+
+/*
+ * One place to run scripts, with its own globals, error state and output.
+ * Globals stay around between calls, the way they do between lines at the
+ * REPL. Output may be buffered, so call output().flush() when it has to be
+ * seen.
+ */
+public final class MflContext {
+    private final MflEngine engine;
+    private final OutputSink output;
+    private final ErrorReporter reporter;
+    private final Consumer<List<Stmt>> executor;
+    private final Interpreter interpreter; // only for the tree-walker
+
+    MflContext(MflEngine engine, OutputSink output, PrintStream err) {
+        this.engine = engine;
+        this.output = output;
+        this.reporter = new ErrorReporter(output, err);
+
+        switch (engine.kind()) {
+            case VM: {
+                VM vm = new VM(reporter);
+                vm.setOutput(output);
+                executor = vm::interpret;
+                interpreter = null;
+                break;
+            }
+            case NODES: {
+                NodeInterpreter nodes = new NodeInterpreter(reporter);
+                nodes.setOutput(output);
+                executor = nodes::interpret;
+                interpreter = null;
+                break;
+            }
+            case FLAT: {
+                FlatInterpreter flat = new FlatInterpreter(reporter);
+                flat.setOutput(output);
+                executor = flat::interpret;
+                interpreter = null;
+                break;
+            }
+            default: {
+                interpreter = new Interpreter(reporter);
+                interpreter.setOutput(output);
+                executor = interpreter::interpret;
+                break;
+            }
+        }
+    }
+
+    public ErrorReporter reporter() {
+        return reporter;
+    }
+
+    public OutputSink output() {
+        return output;
+    }
+
+    // Only the tree-walker can be profiled.
+    public void setProfiler(Profiler profiler) {
+        if (interpreter == null)
+            throw new IllegalStateException("Only the tree-walker can be profiled, not " + engine.kind() + ".");
+        interpreter.setProfiler(profiler);
+    }
+
+    // Compiles and runs a whole script. Errors end up in reporter().
+    public void eval(String source) {
+        List<Stmt> program = engine.compile(source, reporter);
+        if (program != null)
+            execute(program);
+    }
+
+    // Same again for a script file, going through its .mflc file.
+    public void eval(Path script) throws IOException {
+        List<Stmt> program = engine.compile(script, reporter);
+        if (program != null)
+            execute(program);
+    }
+
+    // Runs a program that has already been through MflEngine.compile().
+    public void execute(List<Stmt> program) {
+        ScriptEvent event = new ScriptEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        executor.accept(program);
+
+        finished(event, start, program.size());
+    }
+
+    // Counts one script run in the metrics and ends its event.
+    private void finished(ScriptEvent event, long start, int statements) {
+        MflMetrics.INSTANCE.executed(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.engine = engine.kind().name();
+            event.statements = statements;
+            event.runtimeError = reporter.hadRuntimeError();
+            event.commit();
+        }
+    }
+
+    /*
+     * Runs each top-level declaration as soon as it has been parsed, reading
+     * the file as it goes. Memory use depends on the biggest declaration
+     * rather than the size of the file. Unlike eval, everything before a
+     * syntax error has already run by the time it is found. After an error
+     * the rest of the file is only parsed, to report any others. The file
+     * counts as one script in the metrics and JFR events, however many
+     * declarations it has.
+     */
+    public void stream(FileChannel channel, boolean mapped) throws IOException {
+        ScriptEvent event = new ScriptEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int executed = 0;
+        try {
+            Parser parser = new Parser(new Lexer(channel, mapped, reporter).streamTokens(), reporter);
+            Optimizer optimizer = new Optimizer();
+            Resolver resolver = new Resolver(reporter);
+
+            while (parser.hasNext() && !reporter.hadRuntimeError()) {
+                Stmt statement = parser.parseNext();
+                if (reporter.hadError())
+                    continue;
+
+                List<Stmt> statements = MflEngine.optimizeAndResolve(statement, optimizer, resolver, reporter);
+                if (statements == null || reporter.hadError())
+                    continue;
+
+                executor.accept(statements);
+                executed += statements.size();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            finished(event, start, executed);
+        }
+    }
+}
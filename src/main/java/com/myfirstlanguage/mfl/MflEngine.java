@@ -0,0 +1,195 @@
+package com.myfirstlanguage.mfl;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.Resolver;
+import com.myfirstlanguage.mfl.lexer.Lexer;
+import com.myfirstlanguage.mfl.monitoring.CompileEvent;
+import com.myfirstlanguage.mfl.monitoring.MflMetrics;
+import com.myfirstlanguage.mfl.paser.Optimizer;
+import com.myfirstlanguage.mfl.paser.Parser;
+import com.myfirstlanguage.mfl.paser.ProgramFile;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * The way in for code that embeds MFL. An engine only knows which kind of
+ * execution engine to use, so one engine can be shared by any number of
+ * threads. Scripts run in contexts made by newContext(), and each context
+ * has its own globals, errors and output. A context must only be used by
+ * one thread at a time, but different contexts can run side by side.
+ */
+public final class MflEngine {
+    public enum Kind {
+        TREE, VM, NODES, FLAT
+    }
+
+    private final Kind kind;
+    private final ScriptCache cache; // null when every script is compiled from scratch
+    private final boolean lazy;
+
+    public MflEngine() {
+        this(Kind.TREE);
+    }
+
+    public MflEngine(Kind kind) {
+        this(kind, null);
+    }
+
+    public MflEngine(Kind kind, ScriptCache cache) {
+        this(kind, cache, false);
+    }
+
+    /*
+     * A lazy engine only parses the body of a top-level function when it is
+     * first called (see Parser), so scripts full of functions that never run
+     * start sooner. The price is that a syntax error in such a body is only
+     * reported when it's first called, and the call fails with a runtime
+     * error. Every call after that reports it again the same way. The other
+     * engines compile everything before running it, so only the tree-walker
+     * is ever lazy.
+     */
+    public MflEngine(Kind kind, ScriptCache cache, boolean lazy) {
+        this.kind = kind;
+        this.cache = cache;
+        this.lazy = lazy && kind == Kind.TREE;
+        if (Boolean.getBoolean("mfl.jmx"))
+            MflMetrics.register();
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public ScriptCache cache() {
+        return cache;
+    }
+
+    public boolean lazy() {
+        return lazy;
+    }
+
+    public MflContext newContext() {
+        return newContext(OutputSink.of(System.out), System.err);
+    }
+
+    public MflContext newContext(OutputSink output, PrintStream err) {
+        return new MflContext(this, output, err);
+    }
+
+    /*
+     * The front end: lexes, parses, optimizes and resolves a script. Returns
+     * null if the reporter has seen an error, so a reporter must be reset()
+     * before it is used for a new script. With a cache, a script that has
+     * been compiled before skips all of that.
+     */
+    public List<Stmt> compile(String source, ErrorReporter reporter) {
+        if (cache == null || reporter.hadError())
+            return compileFresh(source, reporter);
+
+        String key = ScriptCache.key(source);
+        List<Stmt> program = cache.get(key);
+        if (program != null)
+            return program;
+
+        program = compileFresh(source, reporter);
+        if (program == null)
+            return null;
+        return cache.put(key, program, source.length());
+    }
+
+    /*
+     * Like compile(), for a script file. If the .mflc file next to it was made
+     * from exactly this script it is loaded instead, otherwise the script is
+     * compiled and a new .mflc is saved for next time. Not being able to save
+     * it (a read-only directory, say) is not an error. A lazy engine doesn't
+     * save one, as that would mean parsing every function after all.
+     */
+    public List<Stmt> compile(Path script, ErrorReporter reporter) throws IOException {
+        byte[] bytes = Files.readAllBytes(script);
+        byte[] hash = ProgramFile.hash(bytes);
+        Path precompiled = ProgramFile.pathFor(script);
+
+        List<Stmt> program = ProgramFile.read(precompiled, hash);
+        if (program != null)
+            return program;
+
+        program = compile(new String(bytes, Charset.defaultCharset()), reporter);
+        if (program != null && !lazy) {
+            try {
+                ProgramFile.write(precompiled, hash, program);
+            } catch (IOException e) {
+                // run it anyway, it just won't start any faster next time
+            }
+        }
+        return program;
+    }
+
+    private List<Stmt> compileFresh(String source, ErrorReporter reporter) {
+        CompileEvent event = new CompileEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        List<Stmt> statements = frontEnd(source, reporter);
+
+        MflMetrics.INSTANCE.parsed(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.length = source.length();
+            event.succeeded = statements != null;
+            event.commit();
+        }
+        return statements;
+    }
+
+    private List<Stmt> frontEnd(String source, ErrorReporter reporter) {
+        Lexer lexer = new Lexer(source, reporter);
+        Parser parser = new Parser(lexer.scanTokenBuffer(), reporter, lazy);
+        List<Stmt> statements = parser.parse();
+
+        // Stop if there was a syntax error.
+        if (reporter.hadError())
+            return null;
+
+        Optimizer optimizer = new Optimizer();
+        Resolver resolver = new Resolver(reporter);
+        List<Stmt> program = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            List<Stmt> resolved = optimizeAndResolve(statement, optimizer, resolver, reporter);
+            if (resolved == null)
+                return null;
+            program.addAll(resolved);
+        }
+
+        // Stop if there was a resolution error.
+        if (reporter.hadError())
+            return null;
+        return program;
+    }
+
+    /*
+     * The passes after the parser, for one top-level statement. The parser
+     * copes with any amount of nesting but these recurse, so an expression
+     * nested deeply enough overflows the stack. That is reported as an error
+     * at the statement, and null returned: the resolver can't be trusted
+     * with anything after it.
+     */
+    static List<Stmt> optimizeAndResolve(Stmt statement, Optimizer optimizer, Resolver resolver,
+            ErrorReporter reporter) {
+        try {
+            List<Stmt> statements = optimizer.optimize(Collections.singletonList(statement));
+            resolver.resolve(statements);
+            return statements;
+        } catch (StackOverflowError e) {
+            reporter.error(statement.line, "Expression nested too deeply.");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.myfirstlanguage.mfl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Programs that have already been through the front end, keyed by the
+ * SHA-256 of their source. The cache holds at most maxWeight worth of
+ * programs, where a program weighs as much as its source is long, and the
+ * least recently used ones are dropped to make room. Scripts with errors are
+ * never cached, so their errors get reported every time.
+ *
+ * A cached program is shared by every context that runs it, on any thread.
+ * That is safe because nothing in it is written once the front end is done,
+ * with one exception: a function body a lazy engine skipped. The first call
+ * parses and resolves it (which also fills in the declaration's slots and
+ * captures) while holding its LazyBody's lock, then publishes it through the
+ * volatile Stmt.Function.body, so a thread that sees the body sees all of
+ * that too. Globals live in each context, never in the program.
+ */
+public final class ScriptCache {
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static final class Entry {
+        final List<Stmt> program;
+        final long weight;
+
+        Entry(List<Stmt> program, long weight) {
+            this.program = program;
+            this.weight = weight;
+        }
+    }
+
+    public ScriptCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public static String key(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256.", e);
+        }
+    }
+
+    // The cached program for key, or null.
+    public synchronized List<Stmt> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.program;
+    }
+
+    // Returns the program that ends up cached, which is an earlier one if
+    // another thread got there first.
+    public synchronized List<Stmt> put(String key, List<Stmt> program, long programWeight) {
+        Entry existing = entries.get(key);
+        if (existing != null)
+            return existing.program;
+
+        List<Stmt> shared = Collections.unmodifiableList(program);
+        // too big to ever fit, so don't throw everything else out for it
+        if (programWeight > maxWeight)
+            return shared;
+
+        entries.put(key, new Entry(shared, programWeight));
+        weight += programWeight;
+
+        Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+        while (weight > maxWeight) {
+            Entry evicted = oldest.next().getValue();
+            oldest.remove();
+            weight -= evicted.weight;
+            evictions++;
+        }
+        return shared;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ScriptCache[" + entries.size() + " programs, weight " + weight + "/" + maxWeight
+                + ", " + hits + " hits, " + misses + " misses, " + evictions + " evictions]";
+    }
+}
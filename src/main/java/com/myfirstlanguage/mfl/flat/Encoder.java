@@ -0,0 +1,303 @@
+package com.myfirstlanguage.mfl.flat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.lexer.TokenType;
+import com.myfirstlanguage.mfl.paser.Expr;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Writes the resolved AST out as a FlatTree. Each visit reserves room for
+ * its node, then fills in the operands, encoding the children after it.
+ */
+class Encoder implements Expr.ExprVisitor<Integer>, Stmt.StmtVisitor<Integer> {
+    private int[] nodes = new int[256];
+    private int size = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final Map<String, Integer> globals = new HashMap<>(); // name to its number in the tree
+
+    FlatTree encode(List<Stmt> statements) {
+        int root = block(0, statements);
+        String[] names = new String[globals.size()];
+        for (Map.Entry<String, Integer> global : globals.entrySet()) {
+            names[global.getValue()] = global.getKey();
+        }
+        return new FlatTree(Arrays.copyOf(nodes, size), constants.toArray(), names, root);
+    }
+
+    private int node(int kind, int operands) {
+        if (size + operands + 1 > nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, size + operands + 1));
+        }
+        int node = size;
+        nodes[node] = kind;
+        size += operands + 1;
+        return node;
+    }
+
+    // Not nodes[at] = encode(...), as the array may have grown by the time encode returns.
+    private void set(int at, int value) {
+        nodes[at] = value;
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private int global(Token name) {
+        Integer index = globals.get(name.lexeme);
+        if (index == null) {
+            index = globals.size();
+            globals.put(name.lexeme, index);
+        }
+        return index;
+    }
+
+    private int add(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private int encode(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private int encode(Expr expr) {
+        return expr == null ? NodeKind.NONE : expr.accept(this);
+    }
+
+    private int block(int slots, List<Stmt> statements) {
+        int node = node(NodeKind.BLOCK, 2 + statements.size());
+        set(node + 1, slots);
+        set(node + 2, statements.size());
+        for (int i = 0; i < statements.size(); i++) {
+            set(node + 3 + i, encode(statements.get(i)));
+        }
+        return node;
+    }
+
+    /* STATEMENTS */
+
+    @Override
+    public Integer visit(Stmt.Expression stmt) {
+        int node = node(NodeKind.EXPRESSION, 1);
+        set(node + 1, encode(stmt.expression));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Stmt.Print stmt) {
+        int node = node(NodeKind.PRINT, 1);
+        set(node + 1, encode(stmt.expression));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Stmt.Var stmt) {
+        int node;
+        if (stmt.slot < 0) {
+            node = node(NodeKind.DEFINE_GLOBAL, 2);
+            set(node + 1, global(stmt.name));
+        } else {
+            node = node(stmt.cell ? NodeKind.DEFINE_CELL : NodeKind.DEFINE_LOCAL, 2);
+            set(node + 1, stmt.slot);
+        }
+        set(node + 2, encode(stmt.initializer));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Stmt.Block stmt) {
+        return block(stmt.slots, stmt.statements);
+    }
+
+    @Override
+    public Integer visit(Stmt.If stmt) {
+        int node = node(NodeKind.IF, 3);
+        set(node + 1, encode(stmt.condition));
+        set(node + 2, encode(stmt.thenBranch));
+        set(node + 3, stmt.elseBranch == null ? NodeKind.NONE : encode(stmt.elseBranch));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Stmt.While stmt) {
+        int counted = NodeKind.NONE;
+        if (stmt.counter != null) {
+            counted = node(NodeKind.COUNTED, 6);
+            set(counted + 1, stmt.counter.slot);
+            set(counted + 2, operator(stmt.counter.comparison));
+            set(counted + 3, constant(stmt.counter.step));
+            set(counted + 4, stmt.counter.read ? 1 : 0);
+            set(counted + 5, encode(stmt.counter.limit));
+        }
+
+        int node = node(NodeKind.WHILE, 4);
+        set(node + 1, encode(stmt.condition));
+        // a block body's frame is made by the loop, once
+        int body;
+        if (stmt.body instanceof Stmt.Block) {
+            Stmt.Block block = (Stmt.Block) stmt.body;
+            body = block(0, block.statements);
+            set(node + 3, block.slots);
+        } else {
+            body = encode(stmt.body);
+            set(node + 3, 0);
+        }
+        set(node + 2, body);
+        set(node + 4, encode(stmt.increment));
+
+        if (counted == NodeKind.NONE)
+            return node;
+        set(counted + 6, node);
+        return counted;
+    }
+
+    @Override
+    public Integer visit(Stmt.Function stmt) {
+        int node;
+        if (stmt.slot < 0) {
+            node = node(NodeKind.GLOBAL_FUNCTION, 2);
+            set(node + 1, global(stmt.name));
+        } else {
+            node = node(stmt.cell ? NodeKind.CELL_FUNCTION : NodeKind.LOCAL_FUNCTION, 2);
+            set(node + 1, stmt.slot);
+        }
+        int body = block(0, stmt.body);
+        set(node + 2, add(new FlatTree.Function(stmt, body)));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Stmt.Return stmt) {
+        int node = node(NodeKind.RETURN, 1);
+        set(node + 1, stmt.tailCall ? call((Expr.Call) stmt.value, NodeKind.TAIL_CALL) : encode(stmt.value));
+        return node;
+    }
+
+    /* EXPRESSIONS */
+
+    @Override
+    public Integer visit(Expr.Literal expr) {
+        int node = node(NodeKind.CONSTANT, 1);
+        set(node + 1, constant(expr.value));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Expr.Grouping expr) {
+        return encode(expr.expression);
+    }
+
+    @Override
+    public Integer visit(Expr.Variable expr) {
+        int node;
+        if (expr.capture >= 0) {
+            node = node(NodeKind.CAPTURE, 1);
+            set(node + 1, expr.capture);
+        } else if (expr.depth < 0) {
+            node = node(NodeKind.GLOBAL, 2);
+            set(node + 1, expr.name.line);
+            set(node + 2, global(expr.name));
+        } else {
+            node = node(expr.cell ? NodeKind.CELL : NodeKind.LOCAL, 2);
+            set(node + 1, expr.depth);
+            set(node + 2, expr.slot);
+        }
+        return node;
+    }
+
+    @Override
+    public Integer visit(Expr.Assign expr) {
+        int node;
+        if (expr.capture >= 0) {
+            node = node(NodeKind.SET_CAPTURE, 2);
+            set(node + 1, expr.capture);
+        } else if (expr.depth < 0) {
+            node = node(NodeKind.SET_GLOBAL, 3);
+            set(node + 1, expr.name.line);
+            set(node + 2, global(expr.name));
+        } else {
+            node = node(expr.cell ? NodeKind.SET_CELL : NodeKind.SET_LOCAL, 3);
+            set(node + 1, expr.depth);
+            set(node + 2, expr.slot);
+        }
+        set(node + (expr.capture >= 0 ? 2 : 3), encode(expr.value));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Expr.Unary expr) {
+        int node;
+        if (expr.operator.type == TokenType.MINUS) {
+            node = node(NodeKind.NEGATE, 2);
+            set(node + 1, expr.operator.line);
+            set(node + 2, encode(expr.expression));
+        } else {
+            node = node(NodeKind.NOT, 1);
+            set(node + 1, encode(expr.expression));
+        }
+        return node;
+    }
+
+    @Override
+    public Integer visit(Expr.Binary expr) {
+        int node = node(operator(expr.operator.type), 3);
+        set(node + 1, expr.operator.line);
+        set(node + 2, encode(expr.left));
+        set(node + 3, encode(expr.right));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Expr.Logical expr) {
+        int node = node(expr.operator.type == TokenType.OR ? NodeKind.OR : NodeKind.AND, 2);
+        set(node + 1, encode(expr.left));
+        set(node + 2, encode(expr.right));
+        return node;
+    }
+
+    @Override
+    public Integer visit(Expr.Call expr) {
+        return call(expr, NodeKind.CALL);
+    }
+
+    private int call(Expr.Call expr, int kind) {
+        int count = expr.arguments.size();
+        int node = node(kind, 3 + count);
+        set(node + 1, expr.paren.line);
+        set(node + 2, encode(expr.callee));
+        set(node + 3, count);
+        for (int i = 0; i < count; i++) {
+            set(node + 4 + i, encode(expr.arguments.get(i)));
+        }
+        return node;
+    }
+
+    private static int operator(TokenType type) {
+        switch (type) {
+            case PLUS: return NodeKind.ADD;
+            case MINUS: return NodeKind.SUBTRACT;
+            case STAR: return NodeKind.MULTIPLY;
+            case SLASH: return NodeKind.DIVIDE;
+            case LESS: return NodeKind.LESS;
+            case LESS_EQUAL: return NodeKind.LESS_EQUAL;
+            case GREATER: return NodeKind.GREATER;
+            case GREATER_EQUAL: return NodeKind.GREATER_EQUAL;
+            case EQUAL_EQUAL: return NodeKind.EQUAL;
+            case NOT_EQUAL: return NodeKind.NOT_EQUAL;
+            default: throw new IllegalStateException("Unknown binary operator " + type);
+        }
+    }
+}
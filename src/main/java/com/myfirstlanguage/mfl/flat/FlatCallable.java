@@ -0,0 +1,7 @@
+package com.myfirstlanguage.mfl.flat;
+
+abstract class FlatCallable {
+    abstract int arity();
+
+    abstract Object call(Object[] arguments);
+}
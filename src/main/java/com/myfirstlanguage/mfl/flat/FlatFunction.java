@@ -0,0 +1,59 @@
+package com.myfirstlanguage.mfl.flat;
+
+import com.myfirstlanguage.mfl.interpreter.Cell;
+
+final class FlatFunction extends FlatCallable {
+    private final Walker walker; // of the tree the function was declared in
+    private final FlatTree.Function declaration;
+    private final Cell[] captures;
+
+    // What a return f(...) gives back instead of calling f itself.
+    static final class TailCall {
+        final FlatFunction function;
+        final Object[] arguments;
+
+        TailCall(FlatFunction function, Object[] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+        }
+    }
+
+    FlatFunction(Walker walker, FlatTree.Function declaration, Cell[] captures) {
+        this.walker = walker;
+        this.declaration = declaration;
+        this.captures = captures;
+    }
+
+    @Override
+    int arity() {
+        return declaration.arity;
+    }
+
+    @Override
+    Object call(Object[] arguments) {
+        FlatFunction function = this;
+        for (;;) {
+            Object result = function.run(arguments);
+            if (!(result instanceof TailCall))
+                return result;
+            TailCall next = (TailCall) result;
+            function = next.function;
+            arguments = next.arguments;
+        }
+    }
+
+    private Object run(Object[] arguments) {
+        Frame frame = new Frame(declaration.slots, captures);
+        System.arraycopy(arguments, 0, frame.slots, 0, arguments.length);
+        for (int slot : declaration.cellParams) {
+            frame.slots[slot] = new Cell(frame.slots[slot]);
+        }
+        Object result = walker.block(declaration.body, frame);
+        return result == Walker.NORMAL ? null : result;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + declaration.name + ">";
+    }
+}
@@ -0,0 +1,57 @@
+package com.myfirstlanguage.mfl.flat;
+
+import java.util.List;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.Globals;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Runs programs encoded as a FlatTree. The whole program is encoded before
+ * any of it runs, and a caller that keeps the FlatTree instead of the
+ * statements can let the AST go.
+ */
+public class FlatInterpreter {
+    private final Globals globals = new Globals();
+    private OutputSink output = OutputSink.of(System.out);
+    private final ErrorReporter reporter;
+
+    public FlatInterpreter(ErrorReporter reporter) {
+        this.reporter = reporter;
+        globals.define("clock", new FlatCallable() {
+            @Override
+            int arity() {
+                return 0;
+            }
+
+            @Override
+            Object call(Object[] arguments) {
+                return (double) System.currentTimeMillis() / 1000.0;
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+    }
+
+    public void setOutput(OutputSink output) {
+        this.output = output;
+    }
+
+    public void interpret(List<Stmt> statements) {
+        interpret(FlatTree.encode(statements));
+    }
+
+    public void interpret(FlatTree tree) {
+        Walker walker = new Walker(tree, globals, output);
+        try {
+            walker.execute(tree.root, null);
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.myfirstlanguage.mfl.flat;
+
+import java.util.List;
+
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * A resolved program laid out in one int array instead of as a graph of Stmt
+ * and Expr objects, which takes a fraction of the memory on big scripts.
+ * A node is a run of ints: its kind (see NodeKind) and then its operands,
+ * which are child nodes as their index in the array, slots, counts, an
+ * index into constants for literals and functions, an index into globals
+ * for global variables, and the line for anything that can fail at runtime. Children
+ * come right after their parent, so running the tree mostly reads forward
+ * through the array.
+ */
+public final class FlatTree {
+    // What a fun declaration needs besides its body, kept in constants.
+    static final class Function {
+        final String name;
+        final int arity;
+        final int slots;
+        final int[] cellParams;
+        final int[] captures; // depth and slot of each variable a closure copies, as in Stmt.Capture
+        final int body; // a BLOCK with no slots of its own
+
+        Function(Stmt.Function declaration, int body) {
+            this.name = declaration.name.lexeme;
+            this.arity = declaration.params.size();
+            this.slots = declaration.slots;
+            this.cellParams = declaration.cellParams;
+            this.captures = new int[declaration.captures.size() * 2];
+            for (int i = 0; i < declaration.captures.size(); i++) {
+                captures[2 * i] = declaration.captures.get(i).depth;
+                captures[2 * i + 1] = declaration.captures.get(i).slot;
+            }
+            this.body = body;
+        }
+    }
+
+    final int[] nodes;
+    final Object[] constants;
+    final String[] globals; // names, linked to a context's cells when the tree runs
+    final int root; // a BLOCK of the top-level statements
+
+    FlatTree(int[] nodes, Object[] constants, String[] globals, int root) {
+        this.nodes = nodes;
+        this.constants = constants;
+        this.globals = globals;
+        this.root = root;
+    }
+
+    // The statements have to have been through the resolver, and can be dropped afterwards.
+    public static FlatTree encode(List<Stmt> statements) {
+        return new Encoder().encode(statements);
+    }
+
+    // How many ints the nodes take up.
+    public int size() {
+        return nodes.length;
+    }
+}
@@ -0,0 +1,54 @@
+package com.myfirstlanguage.mfl.flat;
+
+// The first int of every node in a FlatTree. Its operands follow it.
+final class NodeKind {
+    private NodeKind() {
+    }
+
+    static final int NONE = -1; // in place of a child that isn't there
+
+    /* EXPRESSIONS */
+
+    static final int CONSTANT = 0; // constant
+    static final int LOCAL = 1; // depth, slot
+    static final int CELL = 2; // depth, slot
+    static final int CAPTURE = 3; // index
+    static final int GLOBAL = 4; // line, global
+    static final int SET_LOCAL = 5; // depth, slot, value
+    static final int SET_CELL = 6; // depth, slot, value
+    static final int SET_CAPTURE = 7; // index, value
+    static final int SET_GLOBAL = 8; // line, global, value
+    static final int NEGATE = 9; // line, operand
+    static final int NOT = 10; // operand
+    static final int AND = 11; // left, right
+    static final int OR = 12; // left, right
+    static final int CALL = 13; // line, callee, count, arguments...
+    static final int TAIL_CALL = 14; // the same, for return f(...)
+    // binary operators: line, left, right
+    static final int ADD = 15;
+    static final int SUBTRACT = 16;
+    static final int MULTIPLY = 17;
+    static final int DIVIDE = 18;
+    static final int LESS = 19;
+    static final int LESS_EQUAL = 20;
+    static final int GREATER = 21;
+    static final int GREATER_EQUAL = 22;
+    static final int EQUAL = 23;
+    static final int NOT_EQUAL = 24;
+
+    /* STATEMENTS */
+
+    static final int EXPRESSION = 25; // expression
+    static final int PRINT = 26; // expression
+    static final int DEFINE_LOCAL = 27; // slot, value or NONE for nil
+    static final int DEFINE_CELL = 28; // slot, value or NONE
+    static final int DEFINE_GLOBAL = 29; // global, value or NONE
+    static final int BLOCK = 30; // slots (0 runs in the enclosing frame), count, statements...
+    static final int IF = 31; // condition, then, else or NONE
+    static final int WHILE = 32; // condition or NONE, body, body slots, increment or NONE
+    static final int COUNTED = 33; // slot, comparison, step constant, read, limit, the WHILE to fall back on
+    static final int LOCAL_FUNCTION = 34; // slot, function constant
+    static final int CELL_FUNCTION = 35; // slot, function constant
+    static final int GLOBAL_FUNCTION = 36; // global, function constant
+    static final int RETURN = 37; // value or NONE
+}
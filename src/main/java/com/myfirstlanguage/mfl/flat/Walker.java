@@ -0,0 +1,322 @@
+package com.myfirstlanguage.mfl.flat;
+
+import com.myfirstlanguage.mfl.interpreter.Cell;
+import com.myfirstlanguage.mfl.interpreter.GlobalCell;
+import com.myfirstlanguage.mfl.interpreter.Globals;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.Rope;
+import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.interpreter.Values;
+
+/*
+ * Runs the nodes of one FlatTree, switching on each node's kind and reading
+ * its operands straight out of the array. Statements return NORMAL when
+ * execution should carry on with the next statement, anything else is the
+ * value of a return statement on its way out to the enclosing call.
+ */
+final class Walker {
+    static final Object NORMAL = new Object();
+
+    private final int[] nodes;
+    private final Object[] constants;
+    private final GlobalCell[] globals; // the tree's, in the context's cells
+    private final OutputSink output;
+
+    Walker(FlatTree tree, Globals globals, OutputSink output) {
+        this.nodes = tree.nodes;
+        this.constants = tree.constants;
+        this.globals = new GlobalCell[tree.globals.length];
+        for (int i = 0; i < this.globals.length; i++) {
+            this.globals[i] = globals.cell(tree.globals[i]);
+        }
+        this.output = output;
+    }
+
+    Object execute(int node, Frame frame) {
+        int[] nodes = this.nodes;
+        switch (nodes[node]) {
+            case NodeKind.EXPRESSION:
+                evaluate(nodes[node + 1], frame);
+                return NORMAL;
+            case NodeKind.PRINT:
+                output.println(Values.stringify(evaluate(nodes[node + 1], frame)));
+                return NORMAL;
+            case NodeKind.DEFINE_LOCAL:
+                frame.slots[nodes[node + 1]] = evaluateOrNil(nodes[node + 2], frame);
+                return NORMAL;
+            case NodeKind.DEFINE_CELL:
+                frame.slots[nodes[node + 1]] = new Cell(evaluateOrNil(nodes[node + 2], frame));
+                return NORMAL;
+            case NodeKind.DEFINE_GLOBAL: {
+                GlobalCell cell = globals[nodes[node + 1]];
+                cell.value = evaluateOrNil(nodes[node + 2], frame);
+                cell.defined = true;
+                return NORMAL;
+            }
+            case NodeKind.BLOCK: {
+                int slots = nodes[node + 1];
+                return block(node, slots == 0 ? frame : new Frame(frame, slots));
+            }
+            case NodeKind.IF:
+                if (Values.isTruthy(evaluate(nodes[node + 1], frame)))
+                    return execute(nodes[node + 2], frame);
+                if (nodes[node + 3] != NodeKind.NONE)
+                    return execute(nodes[node + 3], frame);
+                return NORMAL;
+            case NodeKind.WHILE:
+                return loop(node, frame);
+            case NodeKind.COUNTED:
+                return countedLoop(node, frame);
+            case NodeKind.LOCAL_FUNCTION:
+                frame.slots[nodes[node + 1]] = function(nodes[node + 2], frame);
+                return NORMAL;
+            case NodeKind.CELL_FUNCTION: {
+                // the function may capture its own name
+                Cell self = new Cell(null);
+                frame.slots[nodes[node + 1]] = self;
+                self.value = function(nodes[node + 2], frame);
+                return NORMAL;
+            }
+            case NodeKind.GLOBAL_FUNCTION: {
+                GlobalCell cell = globals[nodes[node + 1]];
+                cell.value = function(nodes[node + 2], frame);
+                cell.defined = true;
+                return NORMAL;
+            }
+            case NodeKind.RETURN:
+                return evaluateOrNil(nodes[node + 1], frame);
+            default:
+                throw new IllegalStateException("Not a statement: " + nodes[node]);
+        }
+    }
+
+    // The statements of a BLOCK, in a frame that's already been made for it.
+    Object block(int node, Frame frame) {
+        int count = nodes[node + 2];
+        for (int i = 0; i < count; i++) {
+            Object result = execute(nodes[node + 3 + i], frame);
+            if (result != NORMAL)
+                return result;
+        }
+        return NORMAL;
+    }
+
+    // See Interpreter.loopFrame for why a block body can keep one frame.
+    private Object loop(int node, Frame frame) {
+        int condition = nodes[node + 1];
+        int body = nodes[node + 2];
+        int bodySlots = nodes[node + 3];
+        int increment = nodes[node + 4];
+        Frame bodyFrame = bodySlots == 0 ? frame : new Frame(frame, bodySlots);
+        while (condition == NodeKind.NONE || Values.isTruthy(evaluate(condition, frame))) {
+            Object result = execute(body, bodyFrame);
+            if (result != NORMAL)
+                return result;
+            if (increment != NodeKind.NONE)
+                evaluate(increment, frame);
+        }
+        return NORMAL;
+    }
+
+    // Like StmtNode.CountedLoop, falling back on the plain loop unless both ends are numbers.
+    private Object countedLoop(int node, Frame frame) {
+        int slot = nodes[node + 1];
+        int loop = nodes[node + 6];
+        Object start = frame.slots[slot];
+        Object end = evaluate(nodes[node + 5], frame);
+        if (!(start instanceof Double) || !(end instanceof Double))
+            return loop(loop, frame);
+
+        int comparison = nodes[node + 2];
+        double step = (Double) constants[nodes[node + 3]];
+        boolean read = nodes[node + 4] != 0;
+        int body = nodes[loop + 2];
+        int bodySlots = nodes[loop + 3];
+        Frame bodyFrame = bodySlots == 0 ? frame : new Frame(frame, bodySlots);
+        double value = (Double) start;
+        double to = (Double) end;
+        Object result = NORMAL;
+        while (inRange(comparison, value, to)) {
+            if (read)
+                frame.slots[slot] = value;
+            result = execute(body, bodyFrame);
+            if (result != NORMAL)
+                break;
+            value += step;
+        }
+        frame.slots[slot] = value;
+        return result;
+    }
+
+    private static boolean inRange(int comparison, double value, double limit) {
+        switch (comparison) {
+            case NodeKind.LESS:
+                return value < limit;
+            case NodeKind.LESS_EQUAL:
+                return value <= limit;
+            case NodeKind.GREATER:
+                return value > limit;
+            default:
+                return value >= limit;
+        }
+    }
+
+    // Every time a fun declaration runs it makes a new function, with copies of just the cells it uses.
+    private FlatFunction function(int constant, Frame frame) {
+        FlatTree.Function declaration = (FlatTree.Function) constants[constant];
+        int[] variables = declaration.captures;
+        Cell[] cells = null;
+        if (variables.length > 0) {
+            cells = new Cell[variables.length / 2];
+            for (int i = 0; i < cells.length; i++) {
+                int depth = variables[2 * i];
+                int slot = variables[2 * i + 1];
+                cells[i] = depth < 0
+                        ? frame.captures[slot]
+                        : (Cell) frame.ancestor(depth).slots[slot];
+            }
+        }
+        return new FlatFunction(this, declaration, cells);
+    }
+
+    private Object evaluateOrNil(int node, Frame frame) {
+        return node == NodeKind.NONE ? null : evaluate(node, frame);
+    }
+
+    Object evaluate(int node, Frame frame) {
+        int[] nodes = this.nodes;
+        switch (nodes[node]) {
+            case NodeKind.CONSTANT:
+                return constants[nodes[node + 1]];
+            case NodeKind.LOCAL:
+                return frame.ancestor(nodes[node + 1]).slots[nodes[node + 2]];
+            case NodeKind.CELL:
+                return ((Cell) frame.ancestor(nodes[node + 1]).slots[nodes[node + 2]]).value;
+            case NodeKind.CAPTURE:
+                return frame.captures[nodes[node + 1]].value;
+            case NodeKind.GLOBAL: {
+                GlobalCell cell = globals[nodes[node + 2]];
+                if (!cell.defined) {
+                    throw new RuntimeError(nodes[node + 1], "Undefined variable '" + cell.name + "'.");
+                }
+                return cell.value;
+            }
+            case NodeKind.SET_LOCAL: {
+                Object value = evaluate(nodes[node + 3], frame);
+                frame.ancestor(nodes[node + 1]).slots[nodes[node + 2]] = value;
+                return value;
+            }
+            case NodeKind.SET_CELL: {
+                Object value = evaluate(nodes[node + 3], frame);
+                ((Cell) frame.ancestor(nodes[node + 1]).slots[nodes[node + 2]]).value = value;
+                return value;
+            }
+            case NodeKind.SET_CAPTURE: {
+                Object value = evaluate(nodes[node + 2], frame);
+                frame.captures[nodes[node + 1]].value = value;
+                return value;
+            }
+            case NodeKind.SET_GLOBAL: {
+                Object value = evaluate(nodes[node + 3], frame);
+                GlobalCell cell = globals[nodes[node + 2]];
+                if (!cell.defined) {
+                    throw new RuntimeError(nodes[node + 1], "Undefined variable '" + cell.name + "'.");
+                }
+                cell.value = value;
+                return value;
+            }
+            case NodeKind.NEGATE: {
+                Object value = evaluate(nodes[node + 2], frame);
+                if (value instanceof Double)
+                    return -(double) value;
+                throw new RuntimeError(nodes[node + 1], "Operand must be a number.");
+            }
+            case NodeKind.NOT:
+                return !Values.isTruthy(evaluate(nodes[node + 1], frame));
+            case NodeKind.AND: {
+                Object value = evaluate(nodes[node + 1], frame);
+                if (!Values.isTruthy(value))
+                    return value;
+                return evaluate(nodes[node + 2], frame);
+            }
+            case NodeKind.OR: {
+                Object value = evaluate(nodes[node + 1], frame);
+                if (Values.isTruthy(value))
+                    return value;
+                return evaluate(nodes[node + 2], frame);
+            }
+            case NodeKind.CALL:
+            case NodeKind.TAIL_CALL:
+                return call(node, frame);
+            default:
+                return binary(node, frame);
+        }
+    }
+
+    private Object binary(int node, Frame frame) {
+        int operator = nodes[node];
+        Object left = evaluate(nodes[node + 2], frame);
+        Object right = evaluate(nodes[node + 3], frame);
+        switch (operator) {
+            case NodeKind.NOT_EQUAL:
+                return !Values.isEqual(left, right);
+            case NodeKind.EQUAL:
+                return Values.isEqual(left, right);
+            case NodeKind.ADD:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
+                }
+                throw new RuntimeError(nodes[node + 1], "Operands must be two numbers or two strings.");
+            default:
+                break;
+        }
+
+        if (!(left instanceof Double && right instanceof Double)) {
+            throw new RuntimeError(nodes[node + 1], "Operands must be numbers.");
+        }
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator) {
+            case NodeKind.GREATER: return a > b;
+            case NodeKind.GREATER_EQUAL: return a >= b;
+            case NodeKind.LESS: return a < b;
+            case NodeKind.LESS_EQUAL: return a <= b;
+            case NodeKind.SUBTRACT: return a - b;
+            case NodeKind.DIVIDE: return a / b;
+            case NodeKind.MULTIPLY: return a * b;
+            default: throw new IllegalStateException("Not an expression: " + operator);
+        }
+    }
+
+    private Object call(int node, Frame frame) {
+        int line = nodes[node + 1];
+        Object function = evaluate(nodes[node + 2], frame);
+
+        Object[] values = new Object[nodes[node + 3]];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(nodes[node + 4 + i], frame);
+        }
+
+        if (!(function instanceof FlatCallable)) {
+            throw new RuntimeError(line, "Can only call functions and classes.");
+        }
+        FlatCallable callable = (FlatCallable) function;
+        if (values.length != callable.arity()) {
+            throw new RuntimeError(line, "Expected " + callable.arity()
+                    + " arguments but got " + values.length + ".");
+        }
+        // The calling function makes the call once this one has returned.
+        if (callable instanceof FlatFunction) {
+            if (nodes[node] == NodeKind.TAIL_CALL)
+                return new FlatFunction.TailCall((FlatFunction) callable, values);
+            return callable.call(values);
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Values.flatten(values[i]);
+        }
+        return callable.call(values);
+    }
+}
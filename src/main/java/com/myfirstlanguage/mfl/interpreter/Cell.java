@@ -0,0 +1,10 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+// A local that closures share. The resolver decides which locals need one.
+public final class Cell {
+    public Object value;
+
+    public Cell(Object value) {
+        this.value = value;
+    }
+}
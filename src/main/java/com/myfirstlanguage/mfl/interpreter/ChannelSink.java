@@ -0,0 +1,157 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Collects printed lines as UTF-8 in one direct ByteBuffer that is reused
+ * for the whole run, and writes it to a channel in big chunks. When it gets
+ * written depends on the flush policy:
+ *
+ *   flushEvery(n)     once n bytes are waiting
+ *   flushAfter(ms)    at most ms after a line is printed, from a background
+ *                     thread if the script doesn't print again before then
+ *   flushAtExit()     only when the buffer is full or flush() is called
+ *
+ * A full buffer is always written out whatever the policy. Everything that
+ * touches the buffer holds the sink's lock, as that thread can write it out
+ * at any time.
+ */
+public final class ChannelSink implements OutputSink {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static ScheduledExecutorService scheduler; // shared by every flushAfter sink, made on first use
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final int flushBytes;
+    private final long flushNanos; // -1 when time plays no part
+    private boolean flushScheduled; // a timed flush is on its way for what's in the buffer
+    private UncheckedIOException timedFlushFailed; // thrown from the next call on the script's thread
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private ChannelSink(WritableByteChannel channel, int capacity, int flushBytes, long flushNanos) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        this.flushBytes = flushBytes;
+        this.flushNanos = flushNanos;
+    }
+
+    public static ChannelSink flushEvery(WritableByteChannel channel, int bytes) {
+        return new ChannelSink(channel, Math.max(bytes, DEFAULT_CAPACITY), bytes, -1);
+    }
+
+    public static ChannelSink flushAfter(WritableByteChannel channel, long millis) {
+        return new ChannelSink(channel, DEFAULT_CAPACITY, DEFAULT_CAPACITY, millis * 1_000_000);
+    }
+
+    public static ChannelSink flushAtExit(WritableByteChannel channel) {
+        return new ChannelSink(channel, DEFAULT_CAPACITY, DEFAULT_CAPACITY, -1);
+    }
+
+    // The process's stdout as a channel. It is never closed.
+    public static WritableByteChannel stdout() {
+        return new FileOutputStream(FileDescriptor.out).getChannel();
+    }
+
+    @Override
+    public synchronized void println(String text) {
+        rethrowTimedFlushFailure();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                encode(text, i);
+                break;
+            }
+            if (!buffer.hasRemaining())
+                write();
+            buffer.put((byte) c);
+        }
+        if (buffer.remaining() < NEWLINE.length)
+            write();
+        buffer.put(NEWLINE);
+
+        if (buffer.position() >= flushBytes) {
+            write();
+        } else if (flushNanos >= 0 && !flushScheduled) {
+            flushScheduled = true;
+            scheduler().schedule(this::timedFlush, flushNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "mfl-output-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    // Lines printed after an earlier write are still waiting, so they go too.
+    private synchronized void timedFlush() {
+        flushScheduled = false;
+        if (buffer.position() == 0)
+            return;
+        try {
+            write();
+        } catch (UncheckedIOException e) {
+            timedFlushFailed = e;
+        }
+    }
+
+    private void rethrowTimedFlushFailure() {
+        UncheckedIOException failure = timedFlushFailed;
+        if (failure != null) {
+            timedFlushFailed = null;
+            throw failure;
+        }
+    }
+
+    // The slow way, for text that isn't plain ASCII from start onwards.
+    private void encode(String text, int start) {
+        CharBuffer in = CharBuffer.wrap(text, start, text.length());
+        encoder.reset();
+        while (encoder.encode(in, buffer, true).isOverflow()) {
+            write();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            write();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        rethrowTimedFlushFailure();
+        write();
+    }
+
+    private void write() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear();
+        }
+    }
+}
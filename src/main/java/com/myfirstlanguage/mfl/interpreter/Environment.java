@@ -1,49 +1,39 @@
 package com.myfirstlanguage.mfl.interpreter;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import com.myfirstlanguage.mfl.lexer.Token;
-
 public class Environment {
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // locals live in slots handed out by the resolver
+    final Object[] slots;
+    // of the closure the environment belongs to, null outside of one
+    final Cell[] captures;
 
-    Environment() {
-        enclosing = null;
-    }
-
-    Environment(Environment enclosing) {
+    // enclosing is null for a block at the top level
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        slots = new Object[size];
+        captures = enclosing == null ? null : enclosing.captures;
     }
 
-    //for var name =
-    void define(String name, Object value) {
-        values.put(name, value);
+    // The frame of a call, which has nothing enclosing it.
+    Environment(int size, Cell[] captures) {
+        this.enclosing = null;
+        slots = new Object[size];
+        this.captures = captures;
     }
 
-    //for name =
-    void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
-      return; 
-    }
-    if (enclosing != null) {
-      enclosing.assign(name, value);
-      return;
-    }
-    throw new RuntimeError(name,
-        "Undefined variable '" + name.lexeme + "'.");
-  }
-
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+    Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
         }
+        return environment;
+    }
 
-        if (enclosing != null) return enclosing.get(name);
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
 
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
     }
 }
@@ -0,0 +1,12 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+// A global variable. Code can hold on to its cell so globals never get looked up by name.
+public final class GlobalCell {
+    public final String name;
+    public Object value;
+    public boolean defined = false;
+
+    GlobalCell(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,29 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * The global variables of one context, by name. A cell is made the first
+ * time anything asks for it, and stays undefined until a var or fun
+ * declaration gives it a value. Engines look a program's cells up once and
+ * keep them in an array of their own, so this is off the hot path.
+ */
+public final class Globals {
+    private final Map<String, GlobalCell> cells = new HashMap<>();
+
+    public GlobalCell cell(String name) {
+        GlobalCell cell = cells.get(name);
+        if (cell == null) {
+            cell = new GlobalCell(name);
+            cells.put(name, cell);
+        }
+        return cell;
+    }
+
+    public void define(String name, Object value) {
+        GlobalCell cell = cell(name);
+        cell.value = value;
+        cell.defined = true;
+    }
+}
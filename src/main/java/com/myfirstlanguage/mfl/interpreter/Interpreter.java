@@ -10,20 +10,45 @@ import com.myfirstlanguage.mfl.paser.Expr.Variable;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.myfirstlanguage.mfl.Mfl;
+import com.myfirstlanguage.mfl.ErrorReporter;
 import com.myfirstlanguage.mfl.lexer.Token;
 import com.myfirstlanguage.mfl.lexer.TokenType;
+import com.myfirstlanguage.mfl.monitoring.MflMetrics;
 import com.myfirstlanguage.mfl.paser.Stmt;
 import com.myfirstlanguage.mfl.paser.Stmt.Expression;
 import com.myfirstlanguage.mfl.paser.Stmt.Print;
 
 public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<Void> {
 
-    final Environment globals = new Environment(); // points to the outer most scope.
-    private Environment environment = globals;
-
-    public Interpreter() {
-        globals.define("clock", new MflCallable() {
+    private final Globals globalCells = new Globals(); // of this context, by name
+    // The cells of the program that is running, swapped by calls to functions of other programs.
+    ProgramGlobals programGlobals = new ProgramGlobals(globalCells);
+    Environment environment = null; // null at the top level, globals aren't in one
+
+    // Set by a return statement. Blocks and loops stop as soon as they see it
+    // and the function call that is returning clears it again.
+    boolean returning = false;
+    private Object returnValue = null;
+    // Set instead of returnValue by return f(...) when f is an MFL function:
+    // the call still to be made, with its frame filled in. The function that
+    // is returning makes it, so the Java stack doesn't grow with each one.
+    MflFunction tailFunction = null;
+    Environment tailFrame = null;
+
+    private OutputSink output = OutputSink.of(System.out);
+    Profiler profiler = null; // only when asked for, it costs a null check otherwise
+
+    // Counted here and added to MflMetrics now and then, which is cheaper
+    // than going to the shared counters every time.
+    private static final int METRICS_EVERY = 1 << 16; // statements
+    private long statements = 0;
+    long calls = 0;
+    long frames = 0;
+    final ErrorReporter reporter;
+
+    public Interpreter(ErrorReporter reporter) {
+        this.reporter = reporter;
+        globalCells.define("clock", new MflCallable() {
             @Override
             public int arity() {
                 return 0;
@@ -32,6 +57,11 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
             @Override
             public Object call(Interpreter interpreter,
                     List<Object> arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -42,17 +72,43 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
         });
     }
 
+    public void setOutput(OutputSink output) {
+        this.output = output;
+    }
+
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
     public void interpret(List<Stmt> statements) {
+        programGlobals = new ProgramGlobals(globalCells);
+        if (profiler != null)
+            profiler.resume();
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Mfl.runtimeError(error);
+            reporter.runtimeError(error);
+        } finally {
+            if (profiler != null)
+                profiler.pause();
+            publishMetrics();
         }
     }
 
-    private void execute(Stmt stmt) {
+    private void publishMetrics() {
+        MflMetrics.INSTANCE.counted(statements, calls, frames);
+        statements = 0;
+        calls = 0;
+        frames = 0;
+    }
+
+    void execute(Stmt stmt) {
+        if (++statements == METRICS_EVERY)
+            publishMetrics();
+        if (profiler != null)
+            profiler.statement(stmt);
         stmt.accept(this);
     }
 
@@ -61,30 +117,143 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
     @Override
     public Void visit(Stmt.Return stmt) {
         Object value = null;
-        if (stmt.value != null)
+        if (stmt.tailCall) {
+            Expr.Call call = (Expr.Call) stmt.value;
+            Object callee = evaluate(call.callee);
+            if (callee instanceof MflFunction && ((MflFunction) callee).arity() == call.arguments.size()) {
+                tailCall((MflFunction) callee, call.arguments);
+                return null;
+            }
+            // Not an MFL function, or called with the wrong number of
+            // arguments, which callNative reports just as a call would.
+            value = callNative(callee, call);
+        } else if (stmt.value != null) {
             value = evaluate(stmt.value);
+        }
 
-        throw new Return(value);
+        returnValue = value;
+        returning = true;
+        return null;
     }
 
     @Override
     public Void visit(Stmt.Function stmt) {
-        MflFunction function = new MflFunction(stmt);
-        environment.define(stmt.name.lexeme, function);
+        // a function that can see itself needs its cell before it's closed over
+        Cell self = null;
+        if (stmt.cell) {
+            self = new Cell(null);
+            environment.slots[stmt.slot] = self;
+        }
+        MflFunction function = new MflFunction(stmt, close(stmt), programGlobals);
+        if (stmt.slot < 0) {
+            defineGlobal(stmt.name, function);
+        } else if (self != null) {
+            self.value = function;
+        } else {
+            environment.slots[stmt.slot] = function;
+        }
         return null;
     }
 
+    private void defineGlobal(Token name, Object value) {
+        GlobalCell cell = programGlobals.cell(name);
+        cell.value = value;
+        cell.defined = true;
+    }
+
+    // Copies out just the cells the function uses, not the frames around it.
+    private Cell[] close(Stmt.Function stmt) {
+        List<Stmt.Capture> variables = stmt.captures;
+        if (variables.isEmpty())
+            return null;
+        Cell[] cells = new Cell[variables.size()];
+        for (int i = 0; i < cells.length; i++) {
+            Stmt.Capture variable = variables.get(i);
+            cells[i] = variable.depth < 0
+                    ? environment.captures[variable.slot]
+                    : (Cell) environment.getAt(variable.depth, variable.slot);
+        }
+        return cells;
+    }
+
     @Override
     public Void visit(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+        Environment frame = loopFrame(stmt.body);
+        // the profiler should see the condition and increment run
+        if (stmt.counter != null && profiler == null && countedLoop(stmt, frame))
+            return null;
+        if (stmt.condition == null) {
+            for (;;) {
+                executeBody(stmt.body, frame);
+                if (returning)
+                    return null;
+                if (stmt.increment != null)
+                    evaluate(stmt.increment);
+            }
+        }
+        while (Values.isTruthy(evaluate(stmt.condition))) {
+            executeBody(stmt.body, frame);
+            if (returning)
+                return null;
+            if (stmt.increment != null)
+                evaluate(stmt.increment);
         }
         return null;
     }
 
+    /*
+     * Runs a loop the resolver marked as counted (Stmt.Counter) with the
+     * counter in a double, instead of evaluating the condition and increment.
+     * Returns false without running anything when the counter or the limit
+     * isn't a number, so the loop can go the usual way and fail there.
+     */
+    private boolean countedLoop(Stmt.While stmt, Environment frame) {
+        Stmt.Counter counter = stmt.counter;
+        Object start = environment.slots[counter.slot];
+        Object end = evaluate(counter.limit);
+        if (!(start instanceof Double) || !(end instanceof Double))
+            return false;
+
+        double value = (Double) start;
+        double limit = (Double) end;
+        while (counter.inRange(value, limit)) {
+            if (counter.read)
+                environment.slots[counter.slot] = value;
+            executeBody(stmt.body, frame);
+            if (returning)
+                break;
+            value += counter.step;
+        }
+        environment.slots[counter.slot] = value;
+        return true;
+    }
+
+    /*
+     * A loop whose body is a block with locals makes the block's environment
+     * once and uses it every time round. Nothing can still be holding on to
+     * it from the last iteration: closures copy out just the cells they use,
+     * and the body declares each local again before reading it.
+     */
+    private Environment loopFrame(Stmt body) {
+        if (!(body instanceof Stmt.Block) || ((Stmt.Block) body).slots == 0)
+            return null;
+        frames++;
+        return new Environment(environment, ((Stmt.Block) body).slots);
+    }
+
+    private void executeBody(Stmt body, Environment frame) {
+        if (frame == null) {
+            execute(body);
+            return;
+        }
+        if (++statements == METRICS_EVERY)
+            publishMetrics();
+        executeBlock(((Stmt.Block) body).statements, frame);
+    }
+
     @Override
     public Void visit(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
+        if (Values.isTruthy(evaluate(stmt.condition))) {
             execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
             execute(stmt.elseBranch);
@@ -94,7 +263,12 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
 
     @Override
     public Void visit(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        if (stmt.slots == 0) {
+            executeBlock(stmt.statements, environment);
+            return null;
+        }
+        frames++;
+        executeBlock(stmt.statements, new Environment(environment, stmt.slots));
         return null;
     }
 
@@ -105,7 +279,11 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
+        if (stmt.slot < 0) {
+            defineGlobal(stmt.name, value);
+        } else {
+            environment.slots[stmt.slot] = stmt.cell ? new Cell(value) : value;
+        }
         return null;
     }
 
@@ -118,7 +296,7 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
     @Override
     public Void visit(Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        output.println(Values.stringify(value));
         return null;
     }
 
@@ -130,44 +308,104 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
 
             for (Stmt statement : statements) {
                 execute(statement);
+                if (returning)
+                    return;
             }
         } finally {
             this.environment = previous;
         }
     }
 
+    private void tailCall(MflFunction function, List<Expr> arguments) {
+        Environment frame = function.frame(this);
+        for (int i = 0; i < arguments.size(); i++) {
+            frame.slots[i] = evaluate(arguments.get(i));
+        }
+        tailFunction = function;
+        tailFrame = frame;
+        returning = true;
+    }
+
+    // Called by a function once its body has finished running.
+    Object takeReturnValue() {
+        if (!returning)
+            return null;
+        Object value = returnValue;
+        returning = false;
+        returnValue = null;
+        return value;
+    }
+
     /* EXPRESSION HANDLING */
     @Override
     public Object visit(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
+        if (!(callee instanceof MflFunction))
+            return callNative(callee, expr);
+        List<Expr> args = expr.arguments;
+
+        // Up to three arguments are passed straight through, no list needed.
+        switch (args.size()) {
+            case 0:
+                return callable(callee, expr.paren, 0).call0(this);
+            case 1: {
+                Object a = evaluate(args.get(0));
+                return callable(callee, expr.paren, 1).call1(this, a);
+            }
+            case 2: {
+                Object a = evaluate(args.get(0));
+                Object b = evaluate(args.get(1));
+                return callable(callee, expr.paren, 2).call2(this, a, b);
+            }
+            case 3: {
+                Object a = evaluate(args.get(0));
+                Object b = evaluate(args.get(1));
+                Object c = evaluate(args.get(2));
+                return callable(callee, expr.paren, 3).call3(this, a, b, c);
+            }
+            default:
+                break;
+        }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
+        List<Object> arguments = new ArrayList<>(args.size());
+        for (Expr argument : args) {
             arguments.add(evaluate(argument));
         }
+        return callable(callee, expr.paren, arguments.size()).call(this, arguments);
+    }
 
+    private Object callNative(Object callee, Expr.Call expr) {
+        List<Object> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(Values.flatten(evaluate(argument)));
+        }
+        return callable(callee, expr.paren, arguments.size()).call(this, arguments);
+    }
+
+    // Checks the callee can be called with this many arguments.
+    private MflCallable callable(Object callee, Token paren, int argumentCount) {
         if (!(callee instanceof MflCallable)) {
-            throw new RuntimeError(expr.paren,
+            throw new RuntimeError(paren,
                     "Can only call functions and classes.");
         }
 
         MflCallable function = (MflCallable) callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " +
+        if (argumentCount != function.arity()) {
+            throw new RuntimeError(paren, "Expected " +
                     function.arity() + " arguments but got " +
-                    arguments.size() + ".");
+                    argumentCount + ".");
         }
-        return function.call(this, arguments);
+        return function;
     }
 
     @Override
     public Object visit(Expr.Logical expr) {
         Object left = evaluate(expr.left);
         if (expr.operator.type == TokenType.OR) {
-            if (isTruthy(left))
+            if (Values.isTruthy(left))
                 return left;
         } else {
-            if (!isTruthy(left))
+            if (!Values.isTruthy(left))
                 return left;
         }
 
@@ -177,13 +415,37 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
     @Override
     public Object visit(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+        if (expr.depth < 0) {
+            if (expr.capture >= 0) {
+                environment.captures[expr.capture].value = value;
+                return value;
+            }
+            GlobalCell cell = programGlobals.cell(expr.name);
+            if (!cell.defined) {
+                throw new RuntimeError(expr.name, "Undefined variable '" + expr.name.lexeme + "'.");
+            }
+            cell.value = value;
+        } else if (expr.cell) {
+            ((Cell) environment.getAt(expr.depth, expr.slot)).value = value;
+        } else {
+            environment.assignAt(expr.depth, expr.slot, value);
+        }
         return value;
     }
 
     @Override
     public Object visit(Expr.Variable expr) {
-        return environment.get(expr.name);
+        if (expr.depth < 0) {
+            if (expr.capture >= 0)
+                return environment.captures[expr.capture].value;
+            GlobalCell cell = programGlobals.cell(expr.name);
+            if (!cell.defined) {
+                throw new RuntimeError(expr.name, "Undefined variable '" + expr.name.lexeme + "'.");
+            }
+            return cell.value;
+        }
+        Object value = environment.getAt(expr.depth, expr.slot);
+        return expr.cell ? ((Cell) value).value : value;
     }
 
     @Override
@@ -198,96 +460,173 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
 
     @Override
     public Object visit(Expr.Unary expr) {
-        Object right = evaluate(expr.expression);
-
-        switch (expr.operator.type) {
-            case NOT:
-                return !isTruthy(right);
-            case MINUS:
-                checkNumberOperand(expr.operator, right);
-                return -(double) right;
+        if (expr.numeric) {
+            if (Resolver.isNumeric(expr.expression))
+                return -evaluateDouble(expr.expression);
+            Object operand = evaluate(expr.expression);
+            checkNumberOperand(expr.operator, operand);
+            return -(double) operand;
         }
-        // Unreachable.
-        return null;
+
+        // Only ! is left.
+        return !Values.isTruthy(evaluate(expr.expression));
     }
 
     @Override
     public Object visit(Expr.Binary expr) {
+        boolean numeric = expr.numeric;
+        switch (expr.operator.type) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                numeric = true;
+                break;
+            default:
+                break;
+        }
+
+        /*
+         * Number crunching and comparisons, boxed once here rather than at
+         * every step. Both sides are evaluated right here, not through
+         * evaluateDouble, so an operand that calls a function costs no extra
+         * Java frame: that is what limits how deep MFL code can recurse.
+         */
+        if (numeric) {
+            boolean leftNumeric = Resolver.isNumeric(expr.left);
+            boolean rightNumeric = Resolver.isNumeric(expr.right);
+            double left = 0;
+            double right = 0;
+            Object leftValue = null;
+            Object rightValue = null;
+            if (leftNumeric) {
+                left = evaluateDouble(expr.left);
+            } else {
+                leftValue = evaluate(expr.left);
+            }
+            if (rightNumeric) {
+                right = evaluateDouble(expr.right);
+            } else {
+                rightValue = evaluate(expr.right);
+            }
+            if (!leftNumeric) {
+                left = checkNumber(expr.operator, leftValue);
+            }
+            if (!rightNumeric) {
+                right = checkNumber(expr.operator, rightValue);
+            }
+
+            switch (expr.operator.type) {
+                case PLUS:
+                    return left + right;
+                case MINUS:
+                    return left - right;
+                case STAR:
+                    return left * right;
+                case SLASH:
+                    return left / right;
+                case GREATER:
+                    return left > right;
+                case GREATER_EQUAL:
+                    return left >= right;
+                case LESS:
+                    return left < right;
+                default:
+                    return left <= right;
+            }
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
             case NOT_EQUAL:
-                return !isEqual(left, right);
+                return !Values.isEqual(left, right);
             case EQUAL_EQUAL:
-                return isEqual(left, right);
-            case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
-            case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
-            case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
-            case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
+                return Values.isEqual(left, right);
             case PLUS:
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
                 }
 
                 throw new RuntimeError(expr.operator,
                         "Operands must be two numbers or two strings.");
-            case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left / (double) right;
-            case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
         }
 
         // Unreachable.
         return null;
     }
 
-    private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null)
-            return true;
-        if (a == null)
-            return false;
-        return a.equals(b);
-    }
-
-    private boolean isTruthy(Object object) {
-        if (object == null)
-            return false;
-        if (object instanceof Boolean)
-            return (boolean) object;
-        return true;
-    }
+    /*
+     * The unboxed path for the operands of a numeric expression. Only called
+     * on expressions the resolver marked numeric, whose value is a number if
+     * it doesn't throw. Numeric operands
+     * are evaluated straight to doubles; any other operand is evaluated as
+     * usual and type checked once both sides have run, so errors happen in
+     * the same order as on the boxed path.
+     */
+    private double evaluateDouble(Expr expr) {
+        if (expr instanceof Expr.Literal)
+            return (double) ((Expr.Literal) expr).value;
+        if (expr instanceof Expr.Grouping)
+            return evaluateDouble(((Expr.Grouping) expr).expression);
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            if (Resolver.isNumeric(unary.expression))
+                return -evaluateDouble(unary.expression);
+            Object operand = evaluate(unary.expression);
+            checkNumberOperand(unary.operator, operand);
+            return -(double) operand;
+        }
 
-    private String stringify(Object object) {
-        if (object == null)
-            return "nil";
+        Expr.Binary binary = (Expr.Binary) expr;
+        boolean leftNumeric = Resolver.isNumeric(binary.left);
+        boolean rightNumeric = Resolver.isNumeric(binary.right);
+        double left = 0;
+        double right = 0;
+        Object leftValue = null;
+        Object rightValue = null;
+        if (leftNumeric) {
+            left = evaluateDouble(binary.left);
+        } else {
+            leftValue = evaluate(binary.left);
+        }
+        if (rightNumeric) {
+            right = evaluateDouble(binary.right);
+        } else {
+            rightValue = evaluate(binary.right);
+        }
+        if (!leftNumeric) {
+            left = checkNumber(binary.operator, leftValue);
+        }
+        if (!rightNumeric) {
+            right = checkNumber(binary.operator, rightValue);
+        }
 
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
+        switch (binary.operator.type) {
+            case PLUS:
+                return left + right;
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            default:
+                return left / right;
         }
+    }
 
-        return object.toString();
+    private double checkNumber(Token operator, Object operand) {
+        if (operand instanceof Double)
+            return (double) operand;
+        if (operator.type == TokenType.PLUS) {
+            throw new RuntimeError(operator,
+                    "Operands must be two numbers or two strings.");
+        }
+        throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
@@ -296,14 +635,6 @@ public class Interpreter implements Expr.ExprVisitor<Object>, Stmt.StmtVisitor<V
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator,
-            Object left, Object right) {
-        if (left instanceof Double && right instanceof Double)
-            return;
-
-        throw new RuntimeError(operator, "Operands must be numbers.");
-    }
-
     private Object evaluate(Expr expr) {
         return expr.accept(this);
     }
@@ -1,8 +1,28 @@
 package com.myfirstlanguage.mfl.interpreter;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public interface MflCallable {
     int arity();
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    // Calls with up to three arguments come in here, so they don't need a
+    // list. Callables that care about the cost override these.
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, Collections.emptyList());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
 }
@@ -2,30 +2,131 @@ package com.myfirstlanguage.mfl.interpreter;
 
 import java.util.List;
 
+import com.myfirstlanguage.mfl.monitoring.FunctionCallEvent;
 import com.myfirstlanguage.mfl.paser.Stmt;
 
 public class MflFunction implements MflCallable {
     private final Stmt.Function declaration;
+    private final Cell[] captures; // null when it uses nothing from enclosing functions
+    private final ProgramGlobals globals; // of the program it was declared in
 
-    MflFunction(Stmt.Function declaration) {
+    MflFunction(Stmt.Function declaration, Cell[] captures, ProgramGlobals globals) {
         this.declaration = declaration;
+        this.captures = captures;
+        this.globals = globals;
+    }
+
+    // params take the first slots of the frame
+    Environment frame(Interpreter interpreter) {
+        if (declaration.body == null && !declaration.lazyBody.parse(declaration, interpreter.reporter))
+            throw new RuntimeError(declaration.name,
+                    "Syntax error in the body of " + declaration.name.lexeme + ".");
+        interpreter.frames++;
+        return new Environment(declaration.slots, captures);
+    }
+
+    /*
+     * Runs the body, then any tail calls it ends with, in a loop. The body's
+     * statements are run right here rather than through executeBlock, so a
+     * call that isn't a tail call costs as few Java frames as it can: the
+     * interpreter's stack is what limits how deep MFL code can recurse.
+     */
+    private Object run(Interpreter interpreter, Environment environment) {
+        MflFunction function = this;
+        Profiler profiler = interpreter.profiler;
+        ProgramGlobals caller = interpreter.programGlobals;
+        Environment previous = interpreter.environment;
+        try {
+            for (;;) {
+                interpreter.calls++;
+                interpreter.programGlobals = function.globals;
+                interpreter.environment = environment;
+                if (function.declaration.cellParams.length > 0)
+                    function.boxParams(environment);
+                if (profiler != null)
+                    profiler.enter(function.declaration);
+                FunctionCallEvent event = null;
+                if (FunctionCallEvent.enabled()) {
+                    event = new FunctionCallEvent();
+                    event.begin();
+                }
+
+                for (Stmt statement : function.declaration.body) {
+                    interpreter.execute(statement);
+                    if (interpreter.returning)
+                        break;
+                }
+
+                if (event != null) {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.function = function.declaration.name.lexeme;
+                        event.line = function.declaration.name.line;
+                        event.commit();
+                    }
+                }
+                if (profiler != null)
+                    profiler.exit();
+
+                if (interpreter.tailFunction == null)
+                    return interpreter.takeReturnValue();
+
+                function = interpreter.tailFunction;
+                environment = interpreter.tailFrame;
+                interpreter.tailFunction = null;
+                interpreter.tailFrame = null;
+                interpreter.returning = false;
+            }
+        } finally {
+            interpreter.environment = previous;
+            interpreter.programGlobals = caller;
+        }
+    }
+
+    // Params that closures capture go in cells before the body sees them.
+    private void boxParams(Environment environment) {
+        for (int slot : declaration.cellParams) {
+            environment.slots[slot] = new Cell(environment.slots[slot]);
+        }
     }
 
     @Override
     public Object call(Interpreter interpreter,
             List<Object> arguments) {
-        Environment environment = new Environment(interpreter.globals);
+        Environment environment = frame(interpreter);
         for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme,
-                    arguments.get(i));
+            environment.slots[i] = arguments.get(i);
         }
+        return run(interpreter, environment);
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            return returnValue.value;
-        }
-        return null;
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return run(interpreter, frame(interpreter));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Environment environment = frame(interpreter);
+        environment.slots[0] = a;
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Environment environment = frame(interpreter);
+        environment.slots[0] = a;
+        environment.slots[1] = b;
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Environment environment = frame(interpreter);
+        environment.slots[0] = a;
+        environment.slots[1] = b;
+        environment.slots[2] = c;
+        return run(interpreter, environment);
     }
 
     @Override
@@ -0,0 +1,29 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import java.io.PrintStream;
+
+/*
+ * Where print statements send their text. Anything that writes to stderr
+ * has to flush() the sink first so errors show up after the output that came
+ * before them.
+ */
+public interface OutputSink {
+    void println(String text);
+
+    void flush();
+
+    // Straight to a PrintStream, one println call per print statement.
+    static OutputSink of(PrintStream out) {
+        return new OutputSink() {
+            @Override
+            public void println(String text) {
+                out.println(text);
+            }
+
+            @Override
+            public void flush() {
+                out.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Collects where the tree-walker spends its time, when one is given to
+ * Interpreter.setProfiler(). For every function it counts calls and the time
+ * spent in it, both in total and not counting the functions it called, and
+ * for every line how many statements on it ran. The time is also kept per
+ * call stack so it can be written out for flame graph tools.
+ *
+ * A statement's line is the one the parser found it starting on, so it is
+ * the same however much of it the optimizer folded away. Blocks are counted
+ * through the statements in them.
+ */
+public final class Profiler {
+    private static final String TOP_LEVEL = "<script>";
+    private static final int HOTTEST_LINES = 25;
+
+    private static final class FunctionStats {
+        final String name;
+        final int line;
+        long calls = 0;
+        long totalNanos = 0;
+        long selfNanos = 0;
+        int active = 0; // calls on the stack right now, so recursion isn't counted twice
+
+        FunctionStats(String name, int line) {
+            this.name = name;
+            this.line = line;
+        }
+    }
+
+    // One per distinct call stack: the path from the top level down to here.
+    private static final class StackNode {
+        final String name;
+        final FunctionStats function; // null at the top level
+        final Map<FunctionStats, StackNode> children = new LinkedHashMap<>();
+        long selfNanos = 0;
+
+        StackNode(String name, FunctionStats function) {
+            this.name = name;
+            this.function = function;
+        }
+    }
+
+    private final Map<Stmt.Function, FunctionStats> functions = new IdentityHashMap<>();
+    private long[] lineCounts = new long[256];
+
+    private final StackNode root = new StackNode(TOP_LEVEL, null);
+    // the calls running now, innermost last
+    private StackNode[] stack = new StackNode[64];
+    private long[] started = new long[64];
+    private long[] childNanos = new long[64];
+    private int depth = 0;
+
+    public Profiler() {
+        stack[0] = root;
+    }
+
+    // The top level is only timed while the interpreter is running, so time
+    // spent compiling, or waiting at the REPL, isn't counted.
+    void resume() {
+        started[0] = System.nanoTime();
+        childNanos[0] = 0;
+    }
+
+    void pause() {
+        unwind();
+        root.selfNanos += System.nanoTime() - started[0] - childNanos[0];
+    }
+
+    void statement(Stmt stmt) {
+        int line = stmt.line;
+        if (line <= 0 || stmt instanceof Stmt.Block)
+            return;
+        if (line >= lineCounts.length) {
+            lineCounts = Arrays.copyOf(lineCounts, Math.max(line + 1, lineCounts.length * 2));
+        }
+        lineCounts[line]++;
+    }
+
+    void enter(Stmt.Function declaration) {
+        FunctionStats function = functions.get(declaration);
+        if (function == null) {
+            function = new FunctionStats(declaration.name.lexeme, declaration.name.line);
+            functions.put(declaration, function);
+        }
+        function.calls++;
+        function.active++;
+
+        StackNode caller = stack[depth];
+        StackNode node = caller.children.get(function);
+        if (node == null) {
+            node = new StackNode(function.name, function);
+            caller.children.put(function, node);
+        }
+
+        depth++;
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            started = Arrays.copyOf(started, depth * 2);
+            childNanos = Arrays.copyOf(childNanos, depth * 2);
+        }
+        stack[depth] = node;
+        childNanos[depth] = 0;
+        started[depth] = System.nanoTime();
+    }
+
+    void exit() {
+        long elapsed = System.nanoTime() - started[depth];
+        long self = elapsed - childNanos[depth];
+        StackNode node = stack[depth];
+        FunctionStats function = node.function;
+        node.selfNanos += self;
+        function.selfNanos += self;
+        function.active--;
+        if (function.active == 0)
+            function.totalNanos += elapsed;
+
+        stack[depth] = null;
+        depth--;
+        childNanos[depth] += elapsed;
+    }
+
+    // A runtime error skips the exits of everything it unwinds through.
+    private void unwind() {
+        while (depth > 0) {
+            exit();
+        }
+    }
+
+    public void writeReport(PrintStream out) {
+        List<FunctionStats> byTime = new ArrayList<>(functions.values());
+        byTime.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+        out.println("Functions, by self time:");
+        out.printf("%10s %12s %12s  %s%n", "calls", "total ms", "self ms", "function");
+        out.printf("%10s %12s %12.3f  %s%n", "", "", root.selfNanos / 1e6, TOP_LEVEL);
+        for (FunctionStats function : byTime) {
+            out.printf("%10d %12.3f %12.3f  %s (line %d)%n", function.calls,
+                    function.totalNanos / 1e6, function.selfNanos / 1e6, function.name, function.line);
+        }
+
+        List<Integer> lines = new ArrayList<>();
+        for (int line = 0; line < lineCounts.length; line++) {
+            if (lineCounts[line] > 0)
+                lines.add(line);
+        }
+        lines.sort((a, b) -> Long.compare(lineCounts[b], lineCounts[a]));
+        out.println();
+        out.println("Hottest lines, by statements run:");
+        out.printf("%12s  %s%n", "statements", "line");
+        for (int line : lines.subList(0, Math.min(HOTTEST_LINES, lines.size()))) {
+            out.printf("%12d  %d%n", lineCounts[line], line);
+        }
+    }
+
+    /*
+     * One line per call stack, frames separated by ';', then the time spent
+     * in the innermost frame in microseconds. flamegraph.pl, speedscope and
+     * most other flame graph tools read this.
+     */
+    public void writeCollapsedStacks(PrintStream out) {
+        writeCollapsed(out, root, root.name);
+    }
+
+    private void writeCollapsed(PrintStream out, StackNode node, String path) {
+        long micros = node.selfNanos / 1000;
+        if (micros > 0)
+            out.println(path + " " + micros);
+        for (StackNode child : node.children.values()) {
+            writeCollapsed(out, child, path + ";" + child.name);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import java.util.Arrays;
+
+import com.myfirstlanguage.mfl.lexer.Token;
+
+/*
+ * The cells of the globals one program uses, for one run of it, indexed by
+ * the names' symbol numbers. Each is looked up in the context's Globals the
+ * first time the program uses it. Keeping them here rather than on the AST
+ * lets any number of contexts run the same cached program at once.
+ */
+final class ProgramGlobals {
+    private final Globals globals;
+    private GlobalCell[] cells = new GlobalCell[16];
+
+    ProgramGlobals(Globals globals) {
+        this.globals = globals;
+    }
+
+    GlobalCell cell(Token name) {
+        int symbol = name.symbol;
+        if (symbol < cells.length) {
+            GlobalCell cell = cells[symbol];
+            if (cell != null)
+                return cell;
+        }
+        return link(name);
+    }
+
+    private GlobalCell link(Token name) {
+        if (name.symbol >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(cells.length * 2, name.symbol + 1));
+        }
+        GlobalCell cell = globals.cell(name.lexeme);
+        cells[name.symbol] = cell;
+        return cell;
+    }
+}
@@ -0,0 +1,524 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.lexer.TokenType;
+import com.myfirstlanguage.mfl.paser.Expr;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Runs between the parser and the interpreter. Every local variable gets a
+ * slot in the frame of the block or function that declares it, and every
+ * variable reference gets told how many frames up (depth) and which slot to
+ * look in. Anything not found in a local scope is left at depth -1 and is
+ * looked up by name in the globals.
+ *
+ * A function doesn't keep the frames around it alive. When it uses a local
+ * of an enclosing function, that local is captured: it is marked as a cell,
+ * so it lives in a Cell the closure can share, and the function gets a
+ * capture for it. A closure copies only the cells in its captures. Locals
+ * nothing captures stay plain values in their slots.
+ */
+public class Resolver implements Expr.ExprVisitor<Void>, Stmt.StmtVisitor<Void> {
+
+    private static class Local {
+        final int slot;
+        boolean captured = false;
+        // the declarations and uses of it in its own function, which are
+        // told it's a cell at the end of its scope if it got captured
+        final List<Object> nodes = new ArrayList<>();
+
+        Local(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    private static class Scope {
+        final Map<String, Local> locals = new HashMap<>();
+
+        Local declare(String name) {
+            Local local = locals.get(name);
+            if (local == null) {
+                local = new Local(locals.size());
+                locals.put(name, local);
+            }
+            return local;
+        }
+    }
+
+    // The scopes of one function body, or of the top level.
+    private static class FunctionScope {
+        final FunctionScope enclosing;
+        final Stmt.Function function; // null at the top level
+        final List<Scope> scopes = new ArrayList<>();
+        final List<Stmt.Capture> captures = new ArrayList<>();
+        // a Local or a Stmt.Capture of the enclosing function, to its capture number
+        final Map<Object, Integer> captureIndex = new HashMap<>();
+
+        FunctionScope(FunctionScope enclosing, Stmt.Function function) {
+            this.enclosing = enclosing;
+            this.function = function;
+        }
+    }
+
+    private FunctionScope function = new FunctionScope(null, null);
+    private final ErrorReporter reporter;
+    // loops that look like counted loops, checked again once cells are known
+    private final List<Stmt.While> loops = new ArrayList<>();
+
+    public Resolver(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    public void resolve(List<Stmt> statements) {
+        resolveAll(statements);
+        countLoops();
+    }
+
+    // For a LazyBody: resolves the body of a function declared at the top level.
+    public void resolveBody(Stmt.Function function, List<Stmt> body) {
+        resolveFunction(function, body);
+        countLoops();
+    }
+
+    private void countLoops() {
+        // a local is only known to be a cell once its scope has ended
+        for (Stmt.While loop : loops) {
+            if (stillCountable(loop)) {
+                String name = ((Expr.Assign) loop.increment).name.lexeme;
+                loop.counter = new Stmt.Counter(loop, any(loop.body,
+                        expr -> expr instanceof Expr.Variable && ((Expr.Variable) expr).name.lexeme.equals(name)));
+            }
+        }
+        loops.clear();
+    }
+
+    private void resolveAll(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private int declare(Token name, Object node) {
+        List<Scope> scopes = function.scopes;
+        if (scopes.isEmpty())
+            return -1;
+        Local local = scopes.get(scopes.size() - 1).declare(name.lexeme);
+        local.nodes.add(node);
+        return local.slot;
+    }
+
+    private static void endScope(Scope scope) {
+        for (Local local : scope.locals.values()) {
+            if (!local.captured)
+                continue;
+            for (Object node : local.nodes) {
+                if (node instanceof Expr.Variable)
+                    ((Expr.Variable) node).cell = true;
+                else if (node instanceof Expr.Assign)
+                    ((Expr.Assign) node).cell = true;
+                else if (node instanceof Stmt.Var)
+                    ((Stmt.Var) node).cell = true;
+                else
+                    ((Stmt.Function) node).cell = true;
+            }
+        }
+    }
+
+    // Returns the index of the scope in the current function declaring name, or -1.
+    private int scopeOf(Token name) {
+        List<Scope> scopes = function.scopes;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).locals.containsKey(name.lexeme))
+                return i;
+        }
+        return -1;
+    }
+
+    // Returns the capture number of name in scope, or -1 when it's a global.
+    private static int capture(FunctionScope scope, Token name) {
+        FunctionScope outer = scope.enclosing;
+        if (outer == null)
+            return -1;
+
+        List<Scope> scopes = outer.scopes;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Local local = scopes.get(i).locals.get(name.lexeme);
+            if (local != null) {
+                local.captured = true;
+                return addCapture(scope, local, new Stmt.Capture(name, scopes.size() - 1 - i, local.slot));
+            }
+        }
+
+        int index = capture(outer, name);
+        if (index < 0)
+            return -1;
+        return addCapture(scope, outer.captures.get(index), new Stmt.Capture(name, -1, index));
+    }
+
+    private static int addCapture(FunctionScope scope, Object variable, Stmt.Capture capture) {
+        Integer index = scope.captureIndex.get(variable);
+        if (index == null) {
+            index = scope.captures.size();
+            scope.captures.add(capture);
+            scope.captureIndex.put(variable, index);
+        }
+        return index;
+    }
+
+    // Declarations can only be statements of a block, never nested in one.
+    private static boolean declaresAnything(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Var || statement instanceof Stmt.Function)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Whether loop has the shape of a counted loop (see Stmt.Counter), with
+     * a local of the scope the loop is in as the counter. The limit is a
+     * number or a variable the body doesn't assign to.
+     */
+    private static boolean countable(Stmt.While loop) {
+        if (!(loop.condition instanceof Expr.Binary) || !(loop.increment instanceof Expr.Assign))
+            return false;
+        Expr.Binary condition = (Expr.Binary) loop.condition;
+        Expr.Assign increment = (Expr.Assign) loop.increment;
+        switch (condition.operator.type) {
+            case LESS:
+            case LESS_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+                break;
+            default:
+                return false;
+        }
+        if (increment.depth != 0 || !isLocal(condition.left, increment.slot)
+                || !(increment.value instanceof Expr.Binary))
+            return false;
+
+        Expr.Binary next = (Expr.Binary) increment.value;
+        TokenType step = next.operator.type;
+        if ((step != TokenType.PLUS && step != TokenType.MINUS) || !isLocal(next.left, increment.slot)
+                || !isNumber(next.right))
+            return false;
+
+        String name = increment.name.lexeme;
+        if (assigns(loop.body, name))
+            return false;
+        if (condition.right instanceof Expr.Variable) {
+            String limit = ((Expr.Variable) condition.right).name.lexeme;
+            return !limit.equals(name) && !assigns(loop.body, limit);
+        }
+        return isNumber(condition.right);
+    }
+
+    // The rest of countable(), once the cells are known.
+    private static boolean stillCountable(Stmt.While loop) {
+        Expr.Binary condition = (Expr.Binary) loop.condition;
+        if (((Expr.Variable) condition.left).cell)
+            return false;
+        if (!(condition.right instanceof Expr.Variable))
+            return true;
+        // anything but a plain local could be assigned by a function the body calls
+        Expr.Variable limit = (Expr.Variable) condition.right;
+        return (limit.depth >= 0 && !limit.cell) || !any(loop.body, expr -> expr instanceof Expr.Call);
+    }
+
+    private static boolean isLocal(Expr expr, int slot) {
+        return expr instanceof Expr.Variable
+                && ((Expr.Variable) expr).depth == 0 && ((Expr.Variable) expr).slot == slot;
+    }
+
+    private static boolean isNumber(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double;
+    }
+
+    private static boolean assigns(Stmt stmt, String name) {
+        return any(stmt, expr -> expr instanceof Expr.Assign && ((Expr.Assign) expr).name.lexeme.equals(name));
+    }
+
+    // True when test holds for any expression in stmt, functions declared in it included.
+    private static boolean any(Stmt stmt, Predicate<Expr> test) {
+        if (stmt instanceof Stmt.Expression)
+            return any(((Stmt.Expression) stmt).expression, test);
+        if (stmt instanceof Stmt.Print)
+            return any(((Stmt.Print) stmt).expression, test);
+        if (stmt instanceof Stmt.Var)
+            return any(((Stmt.Var) stmt).initializer, test);
+        if (stmt instanceof Stmt.Return)
+            return any(((Stmt.Return) stmt).value, test);
+        if (stmt instanceof Stmt.Block)
+            return any(((Stmt.Block) stmt).statements, test);
+        if (stmt instanceof Stmt.Function)
+            return any(((Stmt.Function) stmt).body, test);
+        if (stmt instanceof Stmt.If) {
+            Stmt.If branch = (Stmt.If) stmt;
+            return any(branch.condition, test) || any(branch.thenBranch, test) || any(branch.elseBranch, test);
+        }
+        if (stmt instanceof Stmt.While) {
+            Stmt.While loop = (Stmt.While) stmt;
+            return any(loop.condition, test) || any(loop.body, test) || any(loop.increment, test);
+        }
+        return false;
+    }
+
+    private static boolean any(List<Stmt> statements, Predicate<Expr> test) {
+        for (Stmt statement : statements) {
+            if (any(statement, test))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean any(Expr expr, Predicate<Expr> test) {
+        if (expr == null)
+            return false;
+        if (test.test(expr))
+            return true;
+        if (expr instanceof Expr.Binary)
+            return any(((Expr.Binary) expr).left, test) || any(((Expr.Binary) expr).right, test);
+        if (expr instanceof Expr.Logical)
+            return any(((Expr.Logical) expr).left, test) || any(((Expr.Logical) expr).right, test);
+        if (expr instanceof Expr.Unary)
+            return any(((Expr.Unary) expr).expression, test);
+        if (expr instanceof Expr.Grouping)
+            return any(((Expr.Grouping) expr).expression, test);
+        if (expr instanceof Expr.Assign)
+            return any(((Expr.Assign) expr).value, test);
+        if (expr instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) expr;
+            if (any(call.callee, test))
+                return true;
+            for (Expr argument : call.arguments) {
+                if (any(argument, test))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /* STATEMENT HANDLING */
+
+    @Override
+    public Void visit(Stmt.Block stmt) {
+        // A block that declares nothing gets no scope, so it needs no
+        // environment of its own when it runs either.
+        if (!declaresAnything(stmt.statements)) {
+            resolveAll(stmt.statements);
+            stmt.slots = 0;
+            return null;
+        }
+
+        List<Scope> scopes = function.scopes;
+        Scope scope = new Scope();
+        scopes.add(scope);
+        resolveAll(stmt.statements);
+        scopes.remove(scopes.size() - 1);
+        endScope(scope);
+        stmt.slots = scope.locals.size();
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Var stmt) {
+        // the initializer can't see the variable it initializes
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        stmt.slot = declare(stmt.name, stmt);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Function stmt) {
+        stmt.slot = declare(stmt.name, stmt);
+        // a lazy body is resolved once it has been parsed
+        if (stmt.body != null)
+            resolveFunction(stmt, stmt.body);
+        return null;
+    }
+
+    private void resolveFunction(Stmt.Function stmt, List<Stmt> body) {
+        function = new FunctionScope(function, stmt);
+        Scope scope = new Scope();
+        function.scopes.add(scope);
+        for (Token param : stmt.params) {
+            scope.declare(param.lexeme);
+        }
+        int params = scope.locals.size();
+        resolveAll(body);
+        endScope(scope);
+        stmt.slots = scope.locals.size();
+
+        int[] cellParams = new int[params];
+        int count = 0;
+        for (Local local : scope.locals.values()) {
+            if (local.captured && local.slot < params)
+                cellParams[count++] = local.slot;
+        }
+        stmt.cellParams = Arrays.copyOf(cellParams, count);
+        stmt.captures = function.captures;
+
+        function = function.enclosing;
+    }
+
+    @Override
+    public Void visit(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        if (stmt.elseBranch != null)
+            resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.While stmt) {
+        if (stmt.condition != null)
+            resolve(stmt.condition);
+        resolve(stmt.body);
+        if (stmt.increment != null)
+            resolve(stmt.increment);
+        if (countable(stmt))
+            loops.add(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Return stmt) {
+        boolean inFunction = function.function != null;
+        if (!inFunction) {
+            reporter.error(stmt.keyword, "Can't return from top-level code.");
+        }
+        if (stmt.value != null)
+            resolve(stmt.value);
+        stmt.tailCall = inFunction && stmt.value instanceof Expr.Call;
+        return null;
+    }
+
+    /* EXPRESSION HANDLING */
+
+    @Override
+    public Void visit(Expr.Variable expr) {
+        int scope = scopeOf(expr.name);
+        if (scope < 0) {
+            expr.capture = capture(function, expr.name);
+            return null;
+        }
+        Local local = function.scopes.get(scope).locals.get(expr.name.lexeme);
+        local.nodes.add(expr);
+        expr.depth = function.scopes.size() - 1 - scope;
+        expr.slot = local.slot;
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Assign expr) {
+        resolve(expr.value);
+        int scope = scopeOf(expr.name);
+        if (scope < 0) {
+            expr.capture = capture(function, expr.name);
+            return null;
+        }
+        Local local = function.scopes.get(scope).locals.get(expr.name.lexeme);
+        local.nodes.add(expr);
+        expr.depth = function.scopes.size() - 1 - scope;
+        expr.slot = local.slot;
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        switch (expr.operator.type) {
+            case MINUS:
+            case STAR:
+            case SLASH:
+                expr.numeric = true;
+                break;
+            case PLUS:
+                // a number plus anything is either a number or an error
+                expr.numeric = isNumeric(expr.left) || isNumeric(expr.right);
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Unary expr) {
+        resolve(expr.expression);
+        expr.numeric = expr.operator.type == TokenType.MINUS;
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Literal expr) {
+        return null;
+    }
+
+    // True when evaluating expr either gives a number or throws.
+    static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Binary)
+            return ((Expr.Binary) expr).numeric;
+        if (expr instanceof Expr.Unary)
+            return ((Expr.Unary) expr).numeric;
+        if (expr instanceof Expr.Literal)
+            return ((Expr.Literal) expr).value instanceof Double;
+        if (expr instanceof Expr.Grouping)
+            return isNumeric(((Expr.Grouping) expr).expression);
+        return false;
+    }
+
+    @Override
+    public Void visit(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,81 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import java.util.ArrayDeque;
+
+/*
+ * A string made by +. Joining two strings only makes a node pointing at both
+ * of them, so building up a long string a piece at a time takes linear time
+ * rather than quadratic. The characters get copied out once, the first time
+ * something needs the whole string: printing it, comparing it with ==, or
+ * passing it to a native function.
+ *
+ * MFL strings are therefore either a String or a Rope, and code that checks
+ * for a string checks for a CharSequence.
+ */
+public final class Rope implements CharSequence {
+    // Joining short strings just copies them, a small String is cheaper than a node.
+    static final int MIN_LENGTH = 64;
+
+    // Until the first toString(), the two halves. After it, left is the whole
+    // string and right is null, so the halves can be collected.
+    private CharSequence left;
+    private CharSequence right;
+    private final int length;
+
+    private Rope(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    public static CharSequence concat(CharSequence left, CharSequence right) {
+        int length = left.length() + right.length();
+        if (length < MIN_LENGTH)
+            return left.toString().concat(right.toString());
+        if (right.length() == 0)
+            return left;
+        if (left.length() == 0)
+            return right;
+        return new Rope(left, right, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    // A loop rather than recursion: s = s + piece builds ropes as deep as
+    // the number of pieces.
+    @Override
+    public String toString() {
+        if (right == null)
+            return (String) left;
+
+        StringBuilder builder = new StringBuilder(length);
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope && ((Rope) piece).right != null) {
+                Rope rope = (Rope) piece;
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                builder.append(piece.toString());
+            }
+        }
+        left = builder.toString();
+        right = null;
+        return (String) left;
+    }
+}
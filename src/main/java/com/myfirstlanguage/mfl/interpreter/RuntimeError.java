@@ -4,9 +4,18 @@ import com.myfirstlanguage.mfl.lexer.Token;
 
 public class RuntimeError extends RuntimeException {
     public final Token token;
+    public final int line;
 
     RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line;
+    }
+
+    // for engines that only keep line numbers around, not tokens
+    public RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+// The rules for MFL values that every execution engine has to agree on.
+public final class Values {
+    private Values() {
+    }
+
+    public static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null)
+            return true;
+        if (a == null)
+            return false;
+        if (a instanceof Rope || b instanceof Rope) {
+            return a instanceof CharSequence && b instanceof CharSequence
+                    && a.toString().equals(b.toString());
+        }
+        return a.equals(b);
+    }
+
+    public static boolean isTruthy(Object object) {
+        if (object == null)
+            return false;
+        if (object instanceof Boolean)
+            return (boolean) object;
+        return true;
+    }
+
+    // Native functions get plain Strings, never a Rope.
+    public static Object flatten(Object value) {
+        if (value instanceof Rope)
+            return value.toString();
+        return value;
+    }
+
+    public static String stringify(Object object) {
+        if (object == null)
+            return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.myfirstlanguage.mfl.lexer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A script read from a file a window at a time, so only the part the lexer
+ * and parser are still working on is ever in memory. The window is either
+ * read into a heap buffer or memory-mapped. The file is taken to be UTF-8:
+ * the lexer looks at it a byte at a time, which is fine because everything
+ * outside string literals and comments is ASCII, and text() decodes the
+ * bytes properly when a lexeme is made.
+ */
+final class ChannelSource extends Source {
+    private static final int WINDOW = 1 << 20;
+    private static final int MAPPED_WINDOW = 1 << 24;
+
+    private final FileChannel channel;
+    private final boolean mapped;
+    private final long size;
+
+    private ByteBuffer window = ByteBuffer.allocate(0);
+    private int windowStart = 0; // position of the first byte in the window
+    private int windowEnd = 0;
+    private int keep = 0; // nothing before this is needed again
+
+    ChannelSource(FileChannel channel, boolean mapped) throws IOException {
+        this.channel = channel;
+        this.mapped = mapped;
+        this.size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Script is too big, the limit is 2GB.");
+        }
+    }
+
+    @Override
+    boolean has(int pos) {
+        if (pos < windowEnd)
+            return true;
+        if (pos >= size)
+            return false;
+        load(pos);
+        return true;
+    }
+
+    @Override
+    char charAt(int pos) {
+        return (char) (window.get(pos - windowStart) & 0xff);
+    }
+
+    @Override
+    String text(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        window.get(start - windowStart, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    void release(int pos) {
+        keep = pos;
+    }
+
+    @Override
+    int tokenCapacity() {
+        // the parser lets go of tokens after every declaration
+        return 1024;
+    }
+
+    // Moves the window so it starts at keep and reaches past pos.
+    private void load(int pos) {
+        // Whatever is still kept should be at most half of the new window, so
+        // there is always plenty of new text in it.
+        long needed = (long) pos - keep + 1;
+        long chunk = Math.max(mapped ? MAPPED_WINDOW : WINDOW, needed * 2);
+        int length = (int) Math.min(size - keep, chunk);
+        try {
+            if (mapped) {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, keep, length);
+            } else {
+                window = refill(length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        windowStart = keep;
+        windowEnd = keep + window.limit();
+    }
+
+    private ByteBuffer refill(int length) throws IOException {
+        // hang on to the bytes from keep onwards that have already been read
+        window.limit(windowEnd - windowStart);
+        window.position(keep - windowStart);
+        ByteBuffer next;
+        if (window.capacity() >= length) {
+            window.compact();
+            next = window;
+        } else {
+            next = ByteBuffer.allocate(length);
+            next.put(window);
+        }
+
+        next.limit(length);
+        while (next.hasRemaining()) {
+            if (channel.read(next, keep + next.position()) < 0)
+                break;
+        }
+        next.flip();
+        return next;
+    }
+}
@@ -1,56 +1,82 @@
 package com.myfirstlanguage.mfl.lexer;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import com.myfirstlanguage.mfl.Mfl;
+import com.myfirstlanguage.mfl.ErrorReporter;
 
 public class Lexer {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final Source source;
+    private final TokenBuffer tokens;
+    private final ErrorReporter reporter;
 
     private int start = 0; // points to first character in lexeme being scanned
     private int current = 0; // points to character currently looked at
     private int line = 1;
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", TokenType.AND);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("fun", TokenType.FUN);
-        keywords.put("if", TokenType.IF);
-        keywords.put("nil", TokenType.NIL);
-        keywords.put("or", TokenType.OR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("super", TokenType.SUPER);
-        keywords.put("this", TokenType.THIS);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("while", TokenType.WHILE);
-    }
-
-    public Lexer(String source) {
+    // The identifiers this lexer has already seen, so each name is only cut
+    // out of the source and numbered once. Open addressing, keyed by the text.
+    private String[] symbolNames = new String[256];
+    private int[] symbolIds = new int[256];
+    private int symbolCount = 0;
+
+    public Lexer(String source, ErrorReporter reporter) {
+        this(new Source.Text(source), reporter);
+    }
+
+    // Reads the script from a file as it goes instead of all up front.
+    public Lexer(FileChannel channel, boolean mapped, ErrorReporter reporter) throws IOException {
+        this(new ChannelSource(channel, mapped), reporter);
+    }
+
+    private Lexer(Source source, ErrorReporter reporter) {
         this.source = source;
+        this.tokens = new TokenBuffer(source);
+        this.reporter = reporter;
     }
 
-    public List<Token> scanTokens() {
+    public TokenBuffer scanTokenBuffer() {
         while (!atEnd()) {
             // We are at the beginning of the next lexeme.
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(TokenType.EOF, "", null, line));
+        tokens.add(TokenType.EOF, current, 0, line);
         return tokens;
     }
+
+    // Tokens are only lexed when the parser gets to them, and the parser can
+    // release the ones it is done with, so a script of any size can be run
+    // with a small buffer.
+    public TokenBuffer streamTokens() {
+        tokens.lexer = this;
+        return tokens;
+    }
+
+    // Lexes just far enough for the token at index to exist.
+    void scanUntil(int index) {
+        while (tokens.size() <= index) {
+            if (atEnd()) {
+                tokens.add(TokenType.EOF, current, 0, line);
+                return;
+            }
+            start = current;
+            scanToken();
+        }
+    }
+
+    // The same tokens as one Token object each.
+    public List<Token> scanTokens() {
+        TokenBuffer buffer = scanTokenBuffer();
+        List<Token> list = new ArrayList<>(buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            list.add(buffer.token(i));
+        }
+        return list;
+    }
     
 
     private void scanToken() {
@@ -91,7 +117,7 @@ public class Lexer {
             default:
                 if (isDigit(c)) { number();
                 } else if (isAlpha(c)) { identifier();
-                } else { Mfl.error(line, "Unexpected character."); }  
+                } else { reporter.error(line, "Unexpected character."); }  
                 break;
         }
     }
@@ -106,16 +132,14 @@ public class Lexer {
         }
 
         if (atEnd()) {
-            Mfl.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
         // The closing ".
         advance();
 
-        // Trim the surrounding quotes.
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        addToken(TokenType.STRING);
     }
 
     private void number() {
@@ -132,7 +156,7 @@ public class Lexer {
             }
         }
 
-        addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(TokenType.NUMBER);
     }
 
     // identifier is for keywords like and, class, for etc
@@ -140,15 +164,101 @@ public class Lexer {
         while (isAlphaNumeric(peek())) {
             advance();
         }
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null){
-            addToken(TokenType.IDENTIFIER);
-        } else{
+        TokenType type = identifierType();
+        if (type == TokenType.IDENTIFIER) {
+            tokens.addIdentifier(start, current - start, line, symbol());
+        } else {
             addToken(type);
         }
     }
 
+    private int symbol() {
+        int length = current - start;
+        int hash = 0;
+        for (int i = start; i < current; i++) {
+            hash = 31 * hash + source.charAt(i); // same as String.hashCode
+        }
+
+        int mask = symbolNames.length - 1;
+        int index = hash & mask;
+        for (String name = symbolNames[index]; name != null; name = symbolNames[index]) {
+            if (name.length() == length && source.matches(start, name))
+                return symbolIds[index];
+            index = (index + 1) & mask;
+        }
+
+        String name = source.text(start, current);
+        int id = tokens.names.add(name);
+        symbolNames[index] = name;
+        symbolIds[index] = id;
+        if (++symbolCount * 2 > symbolNames.length) {
+            growSymbols();
+        }
+        return id;
+    }
+
+    private void growSymbols() {
+        String[] oldNames = symbolNames;
+        int[] oldIds = symbolIds;
+        symbolNames = new String[oldNames.length * 2];
+        symbolIds = new int[oldNames.length * 2];
+        int mask = symbolNames.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null)
+                continue;
+            int index = oldNames[i].hashCode() & mask;
+            while (symbolNames[index] != null) {
+                index = (index + 1) & mask;
+            }
+            symbolNames[index] = oldNames[i];
+            symbolIds[index] = oldIds[i];
+        }
+    }
+
+    // Works out keywords straight from the source so identifiers don't need a
+    // substring just to be looked up.
+    private TokenType identifierType() {
+        switch (source.charAt(start)) {
+            case 'a': return checkKeyword("and", TokenType.AND);
+            case 'c': return checkKeyword("class", TokenType.CLASS);
+            case 'e': return checkKeyword("else", TokenType.ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'a': return checkKeyword("false", TokenType.FALSE);
+                        case 'o': return checkKeyword("for", TokenType.FOR);
+                        case 'u': return checkKeyword("fun", TokenType.FUN);
+                    }
+                }
+                break;
+            case 'i': return checkKeyword("if", TokenType.IF);
+            case 'n': return checkKeyword("nil", TokenType.NIL);
+            case 'o': return checkKeyword("or", TokenType.OR);
+            case 'p': return checkKeyword("print", TokenType.PRINT);
+            case 'r': return checkKeyword("return", TokenType.RETURN);
+            case 's': return checkKeyword("super", TokenType.SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'h': return checkKeyword("this", TokenType.THIS);
+                        case 'r': return checkKeyword("true", TokenType.TRUE);
+                    }
+                }
+                break;
+            case 'v': return checkKeyword("var", TokenType.VAR);
+            case 'w': return checkKeyword("while", TokenType.WHILE);
+        }
+        return TokenType.IDENTIFIER;
+    }
+
+    private TokenType checkKeyword(String keyword, TokenType type) {
+        if (current - start == keyword.length()
+                && source.matches(start, keyword)) {
+            return type;
+        }
+        return TokenType.IDENTIFIER;
+    }
+
     private void inlineComment() {
         // A comment goes until the end of the line.
         while (peek() != '\n' && !atEnd()) {
@@ -171,7 +281,7 @@ public class Lexer {
         }
         
         if (atEnd()) {
-            Mfl.error(line, "Unterminated comment.");
+            reporter.error(line, "Unterminated comment.");
             return;
         }
 
@@ -183,11 +293,11 @@ public class Lexer {
     /* LITTLE HELPER FUNCTIONS: */
     // navigation:
     private boolean atEnd() {
-        return current >= source.length();
+        return !source.has(current);
     }
 
     private boolean atEnd(int pos) {
-        return pos >= source.length();
+        return !source.has(pos);
     }
 
     private char peek() {
@@ -218,13 +328,8 @@ public class Lexer {
     }
 
     // adding tokens:
-    private void addToken(TokenType type, Object value) {
-        String lexeme = source.substring(start, current);
-        tokens.add(new Token(type, lexeme, value, line));
-    }
-
     private void addToken(TokenType type) {
-        addToken(type, null);
+        tokens.add(type, start, current - start, line);
     }
 
     // char checks:
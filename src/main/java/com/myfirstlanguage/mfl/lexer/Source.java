@@ -0,0 +1,65 @@
+package com.myfirstlanguage.mfl.lexer;
+
+/*
+ * The characters the lexer reads. Positions always count from the start of
+ * the script, even when only part of it is held in memory.
+ */
+abstract class Source {
+
+    // False once pos is past the end of the script.
+    abstract boolean has(int pos);
+
+    abstract char charAt(int pos);
+
+    // The text from start up to (not including) end.
+    abstract String text(int start, int end);
+
+    boolean matches(int pos, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!has(pos + i) || charAt(pos + i) != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    // Nothing before pos will be asked for again.
+    void release(int pos) {
+    }
+
+    // A guess at how many tokens to make room for up front.
+    abstract int tokenCapacity();
+
+    static final class Text extends Source {
+        private final String text;
+
+        Text(String text) {
+            this.text = text;
+        }
+
+        @Override
+        boolean has(int pos) {
+            return pos < text.length();
+        }
+
+        @Override
+        char charAt(int pos) {
+            return text.charAt(pos);
+        }
+
+        @Override
+        String text(int start, int end) {
+            return text.substring(start, end);
+        }
+
+        @Override
+        boolean matches(int pos, String other) {
+            return text.regionMatches(pos, other, 0, other.length());
+        }
+
+        @Override
+        int tokenCapacity() {
+            // a token every few characters is typical, the arrays grow if not
+            return Math.max(16, text.length() / 3);
+        }
+    }
+}
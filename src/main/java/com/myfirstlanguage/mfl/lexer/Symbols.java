@@ -0,0 +1,35 @@
+package com.myfirstlanguage.mfl.lexer;
+
+import java.util.Arrays;
+
+/*
+ * The identifier names of one program, numbered in the order the lexer first
+ * sees them. The numbers only mean something within that program: the same
+ * name always gets the same number, so engines can keep the program's
+ * globals in an array indexed by it, but another program numbers its names
+ * from 0 again. Nothing is shared between lexers.
+ */
+public final class Symbols {
+    private String[] names = new String[64];
+    private int count = 0;
+
+    Symbols() {
+    }
+
+    // A name the lexer hasn't seen before, it does the looking up itself.
+    int add(String name) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[count] = name;
+        return count++;
+    }
+
+    public String name(int symbol) {
+        return names[symbol];
+    }
+
+    public int size() {
+        return count;
+    }
+}
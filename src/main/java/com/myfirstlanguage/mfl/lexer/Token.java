@@ -5,12 +5,21 @@ public class Token {
     public final String lexeme; // how its written in text
     public final Object value; // value stored
     public final int line; //line in code the Token is from
+    public final int symbol; // the identifier's number in its program's Symbols, -1 otherwise
 
-    Token(TokenType type, String lexeme, Object value, int line) {
+    Token(TokenType type, String lexeme, Object value, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.value = value;
         this.line = line;
+        this.symbol = symbol;
+    }
+
+    // For tokens that come from somewhere other than the lexer, like a .mflc
+    // file. Identifiers need a number that is the same for every use of the
+    // name in the program, and different from every other name's.
+    public static Token of(TokenType type, String lexeme, int line, int symbol) {
+        return new Token(type, lexeme, null, line, symbol);
     }
 
     @Override
@@ -0,0 +1,182 @@
+package com.myfirstlanguage.mfl.lexer;
+
+import java.util.Arrays;
+
+/*
+ * All the tokens of a source file, kept as parallel arrays instead of one
+ * Token object each. A token is just its type, where it starts in the source,
+ * how long it is and its line. Lexemes and literal values are only cut out of
+ * the source when someone asks for them, and tokens that are always spelled
+ * the same way (punctuation and keywords) never need a substring at all.
+ */
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+
+    static {
+        FIXED_LEXEMES[TokenType.LEFT_BRACKET.ordinal()] = "(";
+        FIXED_LEXEMES[TokenType.RIGHT_BRACKET.ordinal()] = ")";
+        FIXED_LEXEMES[TokenType.LEFT_BRACE.ordinal()] = "{";
+        FIXED_LEXEMES[TokenType.RIGHT_BRACE.ordinal()] = "}";
+        FIXED_LEXEMES[TokenType.COMMA.ordinal()] = ",";
+        FIXED_LEXEMES[TokenType.DOT.ordinal()] = ".";
+        FIXED_LEXEMES[TokenType.MINUS.ordinal()] = "-";
+        FIXED_LEXEMES[TokenType.PLUS.ordinal()] = "+";
+        FIXED_LEXEMES[TokenType.SEMICOLON.ordinal()] = ";";
+        FIXED_LEXEMES[TokenType.SLASH.ordinal()] = "/";
+        FIXED_LEXEMES[TokenType.STAR.ordinal()] = "*";
+        FIXED_LEXEMES[TokenType.NOT.ordinal()] = "!";
+        FIXED_LEXEMES[TokenType.NOT_EQUAL.ordinal()] = "!=";
+        FIXED_LEXEMES[TokenType.EQUAL.ordinal()] = "=";
+        FIXED_LEXEMES[TokenType.EQUAL_EQUAL.ordinal()] = "==";
+        FIXED_LEXEMES[TokenType.GREATER.ordinal()] = ">";
+        FIXED_LEXEMES[TokenType.GREATER_EQUAL.ordinal()] = ">=";
+        FIXED_LEXEMES[TokenType.LESS.ordinal()] = "<";
+        FIXED_LEXEMES[TokenType.LESS_EQUAL.ordinal()] = "<=";
+        FIXED_LEXEMES[TokenType.EOF.ordinal()] = "";
+        for (TokenType type : TYPES) {
+            // keywords are spelled like their type
+            if (type.ordinal() >= TokenType.AND.ordinal() && type != TokenType.EOF) {
+                FIXED_LEXEMES[type.ordinal()] = type.name().toLowerCase();
+            }
+        }
+    }
+
+    private final Source source;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] symbols; // only filled in for identifiers
+    final Symbols names = new Symbols(); // of the identifiers, by number
+    private int count = 0;
+    private int base = 0; // index of the token in slot 0, once earlier ones are released
+
+    // Set when tokens are lexed as the parser asks for them.
+    Lexer lexer = null;
+
+    TokenBuffer(Source source) {
+        this.source = source;
+        int capacity = source.tokenCapacity();
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        symbols = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (count == types.length) {
+            grow();
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    void addIdentifier(int start, int length, int line, int symbol) {
+        add(TokenType.IDENTIFIER, start, length, line);
+        symbols[count - 1] = symbol;
+    }
+
+    private void grow() {
+        int capacity = types.length + (types.length >> 1);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+    }
+
+    // Tokens lexed so far, counting any that have been released.
+    public int size() {
+        return base + count;
+    }
+
+    /*
+     * Where token index is in the arrays. Streaming, this can lex more tokens
+     * and grow the arrays, so it has to be called before reading any of them.
+     */
+    private int slot(int index) {
+        int slot = index - base;
+        if (slot >= count && lexer != null) {
+            lexer.scanUntil(index);
+        }
+        return slot;
+    }
+
+    public TokenType type(int index) {
+        int slot = slot(index);
+        return TYPES[types[slot]];
+    }
+
+    public int line(int index) {
+        int slot = slot(index);
+        return lines[slot];
+    }
+
+    public int start(int index) {
+        int slot = slot(index);
+        return starts[slot];
+    }
+
+    public int length(int index) {
+        int slot = slot(index);
+        return lengths[slot];
+    }
+
+    // The identifier's number from names, or -1 for any other token.
+    public int symbol(int index) {
+        int slot = slot(index);
+        if (TYPES[types[slot]] != TokenType.IDENTIFIER)
+            return -1;
+        return symbols[slot];
+    }
+
+    public String lexeme(int index) {
+        int slot = slot(index);
+        String fixed = FIXED_LEXEMES[types[slot]];
+        if (fixed != null)
+            return fixed;
+        if (TYPES[types[slot]] == TokenType.IDENTIFIER)
+            return names.name(symbols[slot]);
+        return source.text(starts[slot], starts[slot] + lengths[slot]);
+    }
+
+    // The value of a NUMBER or STRING token, null for everything else.
+    public Object value(int index) {
+        int slot = slot(index);
+        switch (TYPES[types[slot]]) {
+            case NUMBER:
+                return Double.parseDouble(lexeme(index));
+            case STRING:
+                // Trim the surrounding quotes.
+                return source.text(starts[slot] + 1, starts[slot] + lengths[slot] - 1);
+            default:
+                return null;
+        }
+    }
+
+    // Makes a real Token, for the parts of the tree that hold on to one.
+    public Token token(int index) {
+        return new Token(type(index), lexeme(index), value(index), line(index), symbol(index));
+    }
+
+    // Forgets every token before index, and the source text they came from.
+    public void release(int index) {
+        // lex the first kept token so we know where its text starts
+        slot(index);
+        int drop = index - base;
+        int kept = count - drop;
+        System.arraycopy(types, drop, types, 0, kept);
+        System.arraycopy(starts, drop, starts, 0, kept);
+        System.arraycopy(lengths, drop, lengths, 0, kept);
+        System.arraycopy(lines, drop, lines, 0, kept);
+        System.arraycopy(symbols, drop, symbols, 0, kept);
+        count = kept;
+        base = index;
+        source.release(starts[0]);
+    }
+}
@@ -0,0 +1,18 @@
+package com.myfirstlanguage.mfl.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("mfl.Compile")
+@Label("MFL Compile")
+@Category("MFL")
+@Description("A script going through the lexer, parser, optimizer and resolver")
+public final class CompileEvent extends jdk.jfr.Event {
+    @Label("Source Length")
+    public int length;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,35 @@
+package com.myfirstlanguage.mfl.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/*
+ * An MFL function call in the tree-walker that took longer than the
+ * threshold, 10 ms unless a recording's settings say otherwise. A tail call
+ * ends the event for the function making it. Calls are frequent enough that
+ * the interpreter checks enabled() before making one at all.
+ */
+@Name("mfl.FunctionCall")
+@Label("MFL Function Call")
+@Category("MFL")
+@Description("A slow call to an MFL function")
+@Threshold("10 ms")
+public final class FunctionCallEvent extends jdk.jfr.Event {
+    @Label("Function")
+    public String function;
+
+    @Label("Line")
+    @Description("Where the function is declared")
+    public int line;
+
+    private static final EventType TYPE = EventType.getEventType(FunctionCallEvent.class);
+
+    // Whether a recording is taking these events right now.
+    public static boolean enabled() {
+        return TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,98 @@
+package com.myfirstlanguage.mfl.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Counters for everything every engine and context in the process has done,
+ * for watching over JMX. Nothing is registered until register() is called,
+ * or an MflEngine is made with -Dmfl.jmx=true, as loading JMX slows down
+ * starting up.
+ *
+ * Statements, calls and frames are only counted by the tree-walker, which
+ * counts them itself and adds them here every so often, so there's nothing
+ * shared on its hot path. Parse time covers the whole front end.
+ */
+public final class MflMetrics implements MflMetricsMBean {
+    public static final MflMetrics INSTANCE = new MflMetrics();
+    public static final String NAME = "com.myfirstlanguage.mfl:type=Metrics";
+
+    private final LongAdder scripts = new LongAdder();
+    private final LongAdder runtimeErrors = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder executionNanos = new LongAdder();
+
+    private MflMetrics() {
+    }
+
+    public static synchronized void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already there
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't register " + NAME + ".", e);
+        }
+    }
+
+    public void parsed(long nanos) {
+        parseNanos.add(nanos);
+    }
+
+    public void executed(long nanos) {
+        scripts.increment();
+        executionNanos.add(nanos);
+    }
+
+    public void runtimeError() {
+        runtimeErrors.increment();
+    }
+
+    public void counted(long statements, long calls, long frames) {
+        this.statements.add(statements);
+        this.calls.add(calls);
+        this.frames.add(frames);
+    }
+
+    @Override
+    public long getScriptsRun() {
+        return scripts.sum();
+    }
+
+    @Override
+    public long getRuntimeErrors() {
+        return runtimeErrors.sum();
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return statements.sum();
+    }
+
+    @Override
+    public long getCallsMade() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getFramesAllocated() {
+        return frames.sum();
+    }
+
+    @Override
+    public long getParseTimeMillis() {
+        return parseNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getExecutionTimeMillis() {
+        return executionNanos.sum() / 1_000_000;
+    }
+}
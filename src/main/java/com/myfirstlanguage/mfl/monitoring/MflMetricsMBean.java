@@ -0,0 +1,18 @@
+package com.myfirstlanguage.mfl.monitoring;
+
+// What MflMetrics shows over JMX, as com.myfirstlanguage.mfl:type=Metrics.
+public interface MflMetricsMBean {
+    long getScriptsRun();
+
+    long getRuntimeErrors();
+
+    long getStatementsExecuted();
+
+    long getCallsMade();
+
+    long getFramesAllocated();
+
+    long getParseTimeMillis();
+
+    long getExecutionTimeMillis();
+}
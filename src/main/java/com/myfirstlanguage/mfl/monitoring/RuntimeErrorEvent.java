@@ -0,0 +1,16 @@
+package com.myfirstlanguage.mfl.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("mfl.RuntimeError")
+@Label("MFL Runtime Error")
+@Category("MFL")
+public final class RuntimeErrorEvent extends jdk.jfr.Event {
+    @Label("Message")
+    public String message;
+
+    @Label("Line")
+    public int line;
+}
@@ -0,0 +1,23 @@
+package com.myfirstlanguage.mfl.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// One script being run by a context. A streamed file is one script too.
+@Name("mfl.Script")
+@Label("MFL Script")
+@Category("MFL")
+@Description("A compiled script running, from its first statement to its last")
+public final class ScriptEvent extends jdk.jfr.Event {
+    @Label("Engine")
+    public String engine;
+
+    @Label("Statements")
+    @Description("Top-level statements in the script that were run")
+    public int statements;
+
+    @Label("Runtime Error")
+    public boolean runtimeError;
+}
@@ -0,0 +1,343 @@
+package com.myfirstlanguage.mfl.nodes;
+
+import com.myfirstlanguage.mfl.interpreter.Rope;
+import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.interpreter.Values;
+import com.myfirstlanguage.mfl.lexer.TokenType;
+
+/*
+ * Binary operators start out Uninitialized. The first time one runs it looks
+ * at its operands and rewrites itself into a node for just those types, like
+ * DoubleAdd or StringAdd, which skips the type switch on later runs. If a
+ * specialized node ever sees other types it rewrites itself into Generic,
+ * which handles everything, and stays that way.
+ */
+abstract class BinaryNode extends ExprNode {
+    final TokenType operator;
+    final int line;
+    ExprNode left;
+    ExprNode right;
+
+    BinaryNode(TokenType operator, int line, ExprNode left, ExprNode right) {
+        this.operator = operator;
+        this.line = line;
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild) {
+            left = (ExprNode) newChild;
+        } else {
+            right = (ExprNode) newChild;
+        }
+    }
+
+    // A guard failed: give up on specializing and finish this evaluation generically.
+    Object generalize(Object leftValue, Object rightValue) {
+        return replace(new Generic(operator, line, left, right)).compute(leftValue, rightValue);
+    }
+
+    // The full semantics of every binary operator, used by Generic and on the slow paths.
+    Object compute(Object left, Object right) {
+        switch (operator) {
+            case NOT_EQUAL:
+                return !Values.isEqual(left, right);
+            case EQUAL_EQUAL:
+                return Values.isEqual(left, right);
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
+                }
+                throw new RuntimeError(line, "Operands must be two numbers or two strings.");
+            default:
+                break;
+        }
+
+        if (!(left instanceof Double && right instanceof Double)) {
+            throw new RuntimeError(line, "Operands must be numbers.");
+        }
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator) {
+            case GREATER: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case LESS: return a < b;
+            case LESS_EQUAL: return a <= b;
+            case MINUS: return a - b;
+            case SLASH: return a / b;
+            case STAR: return a * b;
+            default: throw new IllegalStateException("Unknown binary operator " + operator);
+        }
+    }
+
+    static final class Uninitialized extends BinaryNode {
+        Uninitialized(TokenType operator, int line, ExprNode left, ExprNode right) {
+            super(operator, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            return replace(specialize(leftValue, rightValue)).compute(leftValue, rightValue);
+        }
+
+        private BinaryNode specialize(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                switch (operator) {
+                    case PLUS: return new DoubleAdd(line, left, right);
+                    case MINUS: return new DoubleSubtract(line, left, right);
+                    case STAR: return new DoubleMultiply(line, left, right);
+                    case SLASH: return new DoubleDivide(line, left, right);
+                    case LESS: return new DoubleLess(line, left, right);
+                    case LESS_EQUAL: return new DoubleLessEqual(line, left, right);
+                    case GREATER: return new DoubleGreater(line, left, right);
+                    case GREATER_EQUAL: return new DoubleGreaterEqual(line, left, right);
+                    default: break;
+                }
+            }
+            if (operator == TokenType.PLUS && leftValue instanceof CharSequence
+                    && rightValue instanceof CharSequence) {
+                return new StringAdd(line, left, right);
+            }
+            return new Generic(operator, line, left, right);
+        }
+    }
+
+    static final class Generic extends BinaryNode {
+        Generic(TokenType operator, int line, ExprNode left, ExprNode right) {
+            super(operator, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            return compute(leftValue, right.execute(frame));
+        }
+    }
+
+    static final class StringAdd extends BinaryNode {
+        StringAdd(int line, ExprNode left, ExprNode right) {
+            super(TokenType.PLUS, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            if (leftValue instanceof CharSequence && rightValue instanceof CharSequence) {
+                return Rope.concat((CharSequence) leftValue, (CharSequence) rightValue);
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static final class DoubleAdd extends BinaryNode {
+        DoubleAdd(int line, ExprNode left, ExprNode right) {
+            super(TokenType.PLUS, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(e.result, right.execute(frame)));
+            }
+            try {
+                return a + right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(a, e.result));
+            }
+        }
+    }
+
+    static final class DoubleSubtract extends BinaryNode {
+        DoubleSubtract(int line, ExprNode left, ExprNode right) {
+            super(TokenType.MINUS, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(e.result, right.execute(frame)));
+            }
+            try {
+                return a - right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(a, e.result));
+            }
+        }
+    }
+
+    static final class DoubleMultiply extends BinaryNode {
+        DoubleMultiply(int line, ExprNode left, ExprNode right) {
+            super(TokenType.STAR, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(e.result, right.execute(frame)));
+            }
+            try {
+                return a * right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(a, e.result));
+            }
+        }
+    }
+
+    static final class DoubleDivide extends BinaryNode {
+        DoubleDivide(int line, ExprNode left, ExprNode right) {
+            super(TokenType.SLASH, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(e.result, right.execute(frame)));
+            }
+            try {
+                return a / right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(generalize(a, e.result));
+            }
+        }
+    }
+
+    static final class DoubleLess extends BinaryNode {
+        DoubleLess(int line, ExprNode left, ExprNode right) {
+            super(TokenType.LESS, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, right.execute(frame));
+            }
+            try {
+                return a < right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(a, e.result);
+            }
+        }
+    }
+
+    static final class DoubleLessEqual extends BinaryNode {
+        DoubleLessEqual(int line, ExprNode left, ExprNode right) {
+            super(TokenType.LESS_EQUAL, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, right.execute(frame));
+            }
+            try {
+                return a <= right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(a, e.result);
+            }
+        }
+    }
+
+    static final class DoubleGreater extends BinaryNode {
+        DoubleGreater(int line, ExprNode left, ExprNode right) {
+            super(TokenType.GREATER, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, right.execute(frame));
+            }
+            try {
+                return a > right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(a, e.result);
+            }
+        }
+    }
+
+    static final class DoubleGreaterEqual extends BinaryNode {
+        DoubleGreaterEqual(int line, ExprNode left, ExprNode right) {
+            super(TokenType.GREATER_EQUAL, line, left, right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            double a;
+            try {
+                a = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(e.result, right.execute(frame));
+            }
+            try {
+                return a >= right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return generalize(a, e.result);
+            }
+        }
+    }
+}
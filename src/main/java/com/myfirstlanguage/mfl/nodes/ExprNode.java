@@ -0,0 +1,386 @@
+package com.myfirstlanguage.mfl.nodes;
+
+import com.myfirstlanguage.mfl.interpreter.Cell;
+import com.myfirstlanguage.mfl.interpreter.GlobalCell;
+import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.interpreter.Values;
+import com.myfirstlanguage.mfl.lexer.TokenType;
+
+abstract class ExprNode extends Node {
+
+    abstract Object execute(Frame frame);
+
+    // Nodes that know they produce numbers override this to skip the boxing.
+    double executeDouble(Frame frame) throws UnexpectedResultException {
+        Object value = execute(frame);
+        if (value instanceof Double)
+            return (double) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    static double asDouble(Object value) throws UnexpectedResultException {
+        if (value instanceof Double)
+            return (double) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    static final class Literal extends ExprNode {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class NumberLiteral extends ExprNode {
+        private final double value;
+        private final Double boxed;
+
+        NumberLiteral(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return boxed;
+        }
+
+        @Override
+        double executeDouble(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class LocalRead extends ExprNode {
+        private final int depth;
+        private final int slot;
+
+        LocalRead(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.ancestor(depth).slots[slot];
+        }
+    }
+
+    static final class LocalWrite extends ExprNode {
+        private final int depth;
+        private final int slot;
+        private ExprNode value;
+
+        LocalWrite(int depth, int slot, ExprNode value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            frame.ancestor(depth).slots[slot] = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // A local that closures capture, so its slot holds a cell.
+    static final class CellRead extends ExprNode {
+        private final int depth;
+        private final int slot;
+
+        CellRead(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return ((Cell) frame.ancestor(depth).slots[slot]).value;
+        }
+    }
+
+    static final class CellWrite extends ExprNode {
+        private final int depth;
+        private final int slot;
+        private ExprNode value;
+
+        CellWrite(int depth, int slot, ExprNode value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            ((Cell) frame.ancestor(depth).slots[slot]).value = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // A variable of an enclosing function, through the running closure's cells.
+    static final class CaptureRead extends ExprNode {
+        private final int index;
+
+        CaptureRead(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.captures[index].value;
+        }
+    }
+
+    static final class CaptureWrite extends ExprNode {
+        private final int index;
+        private ExprNode value;
+
+        CaptureWrite(int index, ExprNode value) {
+            this.index = index;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            frame.captures[index].value = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static final class GlobalRead extends ExprNode {
+        private final GlobalCell cell;
+        private final int line;
+
+        GlobalRead(GlobalCell cell, int line) {
+            this.cell = cell;
+            this.line = line;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if (!cell.defined) {
+                throw new RuntimeError(line, "Undefined variable '" + cell.name + "'.");
+            }
+            return cell.value;
+        }
+    }
+
+    static final class GlobalWrite extends ExprNode {
+        private final GlobalCell cell;
+        private final int line;
+        private ExprNode value;
+
+        GlobalWrite(GlobalCell cell, int line, ExprNode value) {
+            this.cell = cell;
+            this.line = line;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            if (!cell.defined) {
+                throw new RuntimeError(line, "Undefined variable '" + cell.name + "'.");
+            }
+            cell.value = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // Negation only works on numbers, so it starts out specialized for them.
+    static final class DoubleNegate extends ExprNode {
+        private final int line;
+        private ExprNode operand;
+
+        DoubleNegate(int line, ExprNode operand) {
+            this.line = line;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Frame frame) throws UnexpectedResultException {
+            try {
+                return -operand.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return asDouble(replace(new GenericNegate(line, operand)).negate(e.result));
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            operand = (ExprNode) newChild;
+        }
+    }
+
+    static final class GenericNegate extends ExprNode {
+        private final int line;
+        private ExprNode operand;
+
+        GenericNegate(int line, ExprNode operand) {
+            this.line = line;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return negate(operand.execute(frame));
+        }
+
+        Object negate(Object value) {
+            if (value instanceof Double)
+                return -(double) value;
+            throw new RuntimeError(line, "Operand must be a number.");
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            operand = (ExprNode) newChild;
+        }
+    }
+
+    static final class Not extends ExprNode {
+        private ExprNode operand;
+
+        Not(ExprNode operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return !Values.isTruthy(operand.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            operand = (ExprNode) newChild;
+        }
+    }
+
+    static final class Logical extends ExprNode {
+        private final boolean isOr;
+        private ExprNode left;
+        private ExprNode right;
+
+        Logical(TokenType operator, ExprNode left, ExprNode right) {
+            this.isOr = operator == TokenType.OR;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object value = left.execute(frame);
+            if (Values.isTruthy(value) == isOr)
+                return value;
+            return right.execute(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) {
+                left = (ExprNode) newChild;
+            } else {
+                right = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static final class Call extends ExprNode {
+        private final int line;
+        private ExprNode callee;
+        private final ExprNode[] arguments;
+        private final boolean tail; // its value is returned straight away
+
+        Call(int line, ExprNode callee, ExprNode[] arguments, boolean tail) {
+            this.line = line;
+            this.tail = tail;
+            this.callee = adopt(callee);
+            this.arguments = arguments;
+            for (ExprNode argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object function = callee.execute(frame);
+
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                values[i] = arguments[i].execute(frame);
+            }
+
+            if (!(function instanceof NodeCallable)) {
+                throw new RuntimeError(line, "Can only call functions and classes.");
+            }
+            NodeCallable callable = (NodeCallable) function;
+            if (values.length != callable.arity()) {
+                throw new RuntimeError(line, "Expected " + callable.arity()
+                        + " arguments but got " + values.length + ".");
+            }
+            // The calling function makes the call once this one has returned.
+            if (callable instanceof NodeFunction) {
+                if (tail)
+                    return new NodeFunction.TailCall((NodeFunction) callable, values);
+                return callable.call(values);
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Values.flatten(values[i]);
+            }
+            return callable.call(values);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (callee == oldChild) {
+                callee = (ExprNode) newChild;
+                return;
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] == oldChild) {
+                    arguments[i] = (ExprNode) newChild;
+                    return;
+                }
+            }
+        }
+    }
+}
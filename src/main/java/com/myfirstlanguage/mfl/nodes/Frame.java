@@ -0,0 +1,31 @@
+package com.myfirstlanguage.mfl.nodes;
+
+import com.myfirstlanguage.mfl.interpreter.Cell;
+
+// The locals of one block or function call, laid out by the resolver.
+final class Frame {
+    final Frame enclosing;
+    final Object[] slots;
+    final Cell[] captures; // of the closure the frame belongs to
+
+    Frame(Frame enclosing, int size) {
+        this.enclosing = enclosing;
+        this.slots = new Object[size];
+        this.captures = enclosing == null ? null : enclosing.captures;
+    }
+
+    // The frame of a call, which has nothing enclosing it.
+    Frame(int size, Cell[] captures) {
+        this.enclosing = null;
+        this.slots = new Object[size];
+        this.captures = captures;
+    }
+
+    Frame ancestor(int depth) {
+        Frame frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.enclosing;
+        }
+        return frame;
+    }
+}
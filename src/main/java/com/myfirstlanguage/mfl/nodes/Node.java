@@ -0,0 +1,26 @@
+package com.myfirstlanguage.mfl.nodes;
+
+/*
+ * Base of the executable tree. A node can swap itself out of its parent for a
+ * better (or more general) version of itself; parents that own child nodes
+ * say how to do that in replaceChild.
+ */
+abstract class Node {
+    Node parent;
+
+    <T extends Node> T adopt(T child) {
+        if (child != null)
+            child.parent = this;
+        return child;
+    }
+
+    <T extends Node> T replace(T replacement) {
+        parent.replaceChild(this, replacement);
+        replacement.parent = parent;
+        return replacement;
+    }
+
+    void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children.");
+    }
+}
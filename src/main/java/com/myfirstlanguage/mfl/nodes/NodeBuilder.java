@@ -0,0 +1,193 @@
+package com.myfirstlanguage.mfl.nodes;
+
+import java.util.List;
+
+import com.myfirstlanguage.mfl.lexer.TokenType;
+import com.myfirstlanguage.mfl.paser.Expr;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+// Builds the executable node tree from the resolved AST.
+class NodeBuilder implements Expr.ExprVisitor<ExprNode>, Stmt.StmtVisitor<StmtNode> {
+    private final NodeInterpreter interpreter;
+
+    NodeBuilder(NodeInterpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    StmtNode build(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private StmtNode[] build(List<Stmt> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = build(statements.get(i));
+        }
+        return nodes;
+    }
+
+    private ExprNode build(Expr expr) {
+        return expr.accept(this);
+    }
+
+    /* STATEMENTS */
+
+    @Override
+    public StmtNode visit(Stmt.Expression stmt) {
+        return new StmtNode.Expression(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visit(Stmt.Print stmt) {
+        return new StmtNode.Print(interpreter.output, build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visit(Stmt.Var stmt) {
+        ExprNode value = stmt.initializer == null
+                ? new ExprNode.Literal(null)
+                : build(stmt.initializer);
+        if (stmt.slot < 0) {
+            return new StmtNode.GlobalDefine(interpreter.global(stmt.name), value);
+        }
+        if (stmt.cell) {
+            return new StmtNode.CellDefine(stmt.slot, value);
+        }
+        return new StmtNode.LocalDefine(stmt.slot, value);
+    }
+
+    @Override
+    public StmtNode visit(Stmt.Block stmt) {
+        return new StmtNode.Block(stmt.slots, build(stmt.statements));
+    }
+
+    @Override
+    public StmtNode visit(Stmt.If stmt) {
+        return new StmtNode.If(build(stmt.condition), build(stmt.thenBranch),
+                stmt.elseBranch == null ? null : build(stmt.elseBranch));
+    }
+
+    @Override
+    public StmtNode visit(Stmt.While stmt) {
+        // a block body's frame is made by the loop, once
+        StmtNode body;
+        int bodyFrameSize = 0;
+        if (stmt.body instanceof Stmt.Block) {
+            Stmt.Block block = (Stmt.Block) stmt.body;
+            body = new StmtNode.Block(0, build(block.statements));
+            bodyFrameSize = block.slots;
+        } else {
+            body = build(stmt.body);
+        }
+        ExprNode increment = stmt.increment == null ? null : build(stmt.increment);
+        if (stmt.condition == null) {
+            return new StmtNode.Loop(body, bodyFrameSize, increment);
+        }
+        StmtNode.While loop = new StmtNode.While(build(stmt.condition), body, bodyFrameSize, increment);
+        if (stmt.counter != null) {
+            return new StmtNode.CountedLoop(stmt.counter, build(stmt.counter.limit), body, bodyFrameSize, loop);
+        }
+        return loop;
+    }
+
+    @Override
+    public StmtNode visit(Stmt.Function stmt) {
+        NodeFunction function = new NodeFunction(stmt, build(stmt.body));
+        if (stmt.slot < 0) {
+            return new StmtNode.GlobalFunction(interpreter.global(stmt.name), function);
+        }
+        return new StmtNode.LocalFunction(stmt.slot, stmt.cell, function);
+    }
+
+    @Override
+    public StmtNode visit(Stmt.Return stmt) {
+        if (stmt.tailCall)
+            return new StmtNode.Return(call((Expr.Call) stmt.value, true));
+        return new StmtNode.Return(stmt.value == null
+                ? new ExprNode.Literal(null)
+                : build(stmt.value));
+    }
+
+    /* EXPRESSIONS */
+
+    @Override
+    public ExprNode visit(Expr.Literal expr) {
+        if (expr.value instanceof Double) {
+            return new ExprNode.NumberLiteral((double) expr.value);
+        }
+        return new ExprNode.Literal(expr.value);
+    }
+
+    @Override
+    public ExprNode visit(Expr.Grouping expr) {
+        return build(expr.expression);
+    }
+
+    @Override
+    public ExprNode visit(Expr.Variable expr) {
+        if (expr.capture >= 0) {
+            return new ExprNode.CaptureRead(expr.capture);
+        }
+        if (expr.depth < 0) {
+            return new ExprNode.GlobalRead(interpreter.global(expr.name), expr.name.line);
+        }
+        if (expr.cell) {
+            return new ExprNode.CellRead(expr.depth, expr.slot);
+        }
+        return new ExprNode.LocalRead(expr.depth, expr.slot);
+    }
+
+    @Override
+    public ExprNode visit(Expr.Assign expr) {
+        ExprNode value = build(expr.value);
+        if (expr.capture >= 0) {
+            return new ExprNode.CaptureWrite(expr.capture, value);
+        }
+        if (expr.depth < 0) {
+            return new ExprNode.GlobalWrite(interpreter.global(expr.name), expr.name.line, value);
+        }
+        if (expr.cell) {
+            return new ExprNode.CellWrite(expr.depth, expr.slot, value);
+        }
+        return new ExprNode.LocalWrite(expr.depth, expr.slot, value);
+    }
+
+    @Override
+    public ExprNode visit(Expr.Unary expr) {
+        ExprNode operand = build(expr.expression);
+        if (expr.operator.type == TokenType.MINUS) {
+            return new ExprNode.DoubleNegate(expr.operator.line, operand);
+        }
+        return new ExprNode.Not(operand);
+    }
+
+    @Override
+    public ExprNode visit(Expr.Binary expr) {
+        ExprNode left = build(expr.left);
+        ExprNode right = build(expr.right);
+        TokenType operator = expr.operator.type;
+        if (operator == TokenType.EQUAL_EQUAL || operator == TokenType.NOT_EQUAL) {
+            // equality works on anything, so there is nothing to specialize
+            return new BinaryNode.Generic(operator, expr.operator.line, left, right);
+        }
+        return new BinaryNode.Uninitialized(operator, expr.operator.line, left, right);
+    }
+
+    @Override
+    public ExprNode visit(Expr.Logical expr) {
+        return new ExprNode.Logical(expr.operator.type, build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public ExprNode visit(Expr.Call expr) {
+        return call(expr, false);
+    }
+
+    private ExprNode call(Expr.Call expr, boolean tail) {
+        ExprNode[] arguments = new ExprNode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = build(expr.arguments.get(i));
+        }
+        return new ExprNode.Call(expr.paren.line, build(expr.callee), arguments, tail);
+    }
+}
@@ -0,0 +1,7 @@
+package com.myfirstlanguage.mfl.nodes;
+
+abstract class NodeCallable {
+    abstract int arity();
+
+    abstract Object call(Object[] arguments);
+}
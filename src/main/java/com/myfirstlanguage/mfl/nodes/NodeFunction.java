@@ -0,0 +1,100 @@
+package com.myfirstlanguage.mfl.nodes;
+
+import java.util.List;
+
+import com.myfirstlanguage.mfl.interpreter.Cell;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+final class NodeFunction extends NodeCallable {
+    private final String name;
+    private final int arity;
+    private final int frameSize;
+    private final int[] cellParams;
+    private final List<Stmt.Capture> variables; // what close() copies
+    private final Cell[] captures;
+    private final StmtNode[] body;
+
+    // What a return f(...) gives back instead of calling f itself.
+    static final class TailCall {
+        final NodeFunction function;
+        final Object[] arguments;
+
+        TailCall(NodeFunction function, Object[] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+        }
+    }
+
+    NodeFunction(Stmt.Function declaration, StmtNode[] body) {
+        this.name = declaration.name.lexeme;
+        this.arity = declaration.params.size();
+        this.frameSize = declaration.slots;
+        this.cellParams = declaration.cellParams;
+        this.variables = declaration.captures;
+        this.captures = null;
+        this.body = body;
+    }
+
+    private NodeFunction(NodeFunction function, Cell[] captures) {
+        this.name = function.name;
+        this.arity = function.arity;
+        this.frameSize = function.frameSize;
+        this.cellParams = function.cellParams;
+        this.variables = function.variables;
+        this.captures = captures;
+        this.body = function.body;
+    }
+
+    @Override
+    int arity() {
+        return arity;
+    }
+
+    @Override
+    Object call(Object[] arguments) {
+        NodeFunction function = this;
+        for (;;) {
+            Object result = function.run(arguments);
+            if (!(result instanceof TailCall))
+                return result;
+            TailCall next = (TailCall) result;
+            function = next.function;
+            arguments = next.arguments;
+        }
+    }
+
+    private Object run(Object[] arguments) {
+        Frame frame = new Frame(frameSize, captures);
+        System.arraycopy(arguments, 0, frame.slots, 0, arguments.length);
+        for (int slot : cellParams) {
+            frame.slots[slot] = new Cell(frame.slots[slot]);
+        }
+        for (StmtNode statement : body) {
+            Object result = statement.execute(frame);
+            if (result != StmtNode.NORMAL)
+                return result;
+        }
+        return null;
+    }
+
+    // Every time a fun declaration runs it makes a new function, like the
+    // tree-walker, with copies of just the cells it uses.
+    NodeFunction close(Frame frame) {
+        Cell[] cells = null;
+        if (!variables.isEmpty()) {
+            cells = new Cell[variables.size()];
+            for (int i = 0; i < cells.length; i++) {
+                Stmt.Capture variable = variables.get(i);
+                cells[i] = variable.depth < 0
+                        ? frame.captures[variable.slot]
+                        : (Cell) frame.ancestor(variable.depth).slots[variable.slot];
+            }
+        }
+        return new NodeFunction(this, cells);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,60 @@
+package com.myfirstlanguage.mfl.nodes;
+
+import java.util.List;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.GlobalCell;
+import com.myfirstlanguage.mfl.interpreter.Globals;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Runs programs as a tree of self-specializing nodes. Each top-level
+ * statement is turned into nodes right before it runs.
+ */
+public class NodeInterpreter {
+    private final Globals globals = new Globals();
+    OutputSink output = OutputSink.of(System.out);
+    private final ErrorReporter reporter;
+
+    public NodeInterpreter(ErrorReporter reporter) {
+        this.reporter = reporter;
+        globals.define("clock", new NodeCallable() {
+            @Override
+            int arity() {
+                return 0;
+            }
+
+            @Override
+            Object call(Object[] arguments) {
+                return (double) System.currentTimeMillis() / 1000.0;
+            }
+
+            @Override
+            public String toString() {
+                return "<native fn>";
+            }
+        });
+    }
+
+    public void setOutput(OutputSink output) {
+        this.output = output;
+    }
+
+    public void interpret(List<Stmt> statements) {
+        NodeBuilder builder = new NodeBuilder(this);
+        try {
+            for (Stmt statement : statements) {
+                builder.build(statement).execute(null);
+            }
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+
+    GlobalCell global(Token name) {
+        return globals.cell(name.lexeme);
+    }
+}
@@ -0,0 +1,355 @@
+package com.myfirstlanguage.mfl.nodes;
+
+import com.myfirstlanguage.mfl.interpreter.Cell;
+import com.myfirstlanguage.mfl.interpreter.GlobalCell;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.Values;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Statements return NORMAL when execution should carry on with the next
+ * statement. Anything else is the value of a return statement on its way out
+ * to the enclosing function call.
+ */
+abstract class StmtNode extends Node {
+    static final Object NORMAL = new Object();
+
+    abstract Object execute(Frame frame);
+
+    static final class Expression extends StmtNode {
+        private ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            expression.execute(frame);
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    static final class Print extends StmtNode {
+        private final OutputSink output;
+        private ExprNode expression;
+
+        Print(OutputSink output, ExprNode expression) {
+            this.output = output;
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            output.println(Values.stringify(expression.execute(frame)));
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    static final class LocalDefine extends StmtNode {
+        private final int slot;
+        private ExprNode value;
+
+        LocalDefine(int slot, ExprNode value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            frame.slots[slot] = value.execute(frame);
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // A local that closures capture, so its value goes in a new cell.
+    static final class CellDefine extends StmtNode {
+        private final int slot;
+        private ExprNode value;
+
+        CellDefine(int slot, ExprNode value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            frame.slots[slot] = new Cell(value.execute(frame));
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static final class GlobalDefine extends StmtNode {
+        private final GlobalCell cell;
+        private ExprNode value;
+
+        GlobalDefine(GlobalCell cell, ExprNode value) {
+            this.cell = cell;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            cell.value = value.execute(frame);
+            cell.defined = true;
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // A frame size of 0 runs the statements in the enclosing frame.
+    static final class Block extends StmtNode {
+        private final int frameSize;
+        private final StmtNode[] statements;
+
+        Block(int frameSize, StmtNode[] statements) {
+            this.frameSize = frameSize;
+            this.statements = statements;
+            for (StmtNode statement : statements) {
+                adopt(statement);
+            }
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Frame inner = frameSize == 0 ? frame : new Frame(frame, frameSize);
+            for (StmtNode statement : statements) {
+                Object result = statement.execute(inner);
+                if (result != NORMAL)
+                    return result;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class If extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode thenBranch;
+        private final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if (Values.isTruthy(condition.execute(frame))) {
+                return thenBranch.execute(frame);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(frame);
+            }
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            condition = (ExprNode) newChild;
+        }
+    }
+
+    /*
+     * When the body is a block with locals, the loop makes the block's frame
+     * once (bodyFrameSize) and the body runs in it every time round. See
+     * Interpreter.loopFrame for why that is safe. The increment may be null.
+     */
+    static final class While extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode body;
+        private final int bodyFrameSize;
+        private ExprNode increment;
+
+        While(ExprNode condition, StmtNode body, int bodyFrameSize, ExprNode increment) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+            this.bodyFrameSize = bodyFrameSize;
+            this.increment = adopt(increment);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Frame bodyFrame = bodyFrameSize == 0 ? frame : new Frame(frame, bodyFrameSize);
+            while (Values.isTruthy(condition.execute(frame))) {
+                Object result = body.execute(bodyFrame);
+                if (result != NORMAL)
+                    return result;
+                if (increment != null)
+                    increment.execute(frame);
+            }
+            return NORMAL;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (oldChild == condition) {
+                condition = (ExprNode) newChild;
+            } else {
+                increment = (ExprNode) newChild;
+            }
+        }
+    }
+
+    /*
+     * A loop the resolver marked as counted (Stmt.Counter). It keeps the
+     * counter in a double and goes the usual way, through loop, when the
+     * counter or the limit isn't a number at the start. The body is the
+     * same node as loop's.
+     */
+    static final class CountedLoop extends StmtNode {
+        private final Stmt.Counter counter;
+        private ExprNode limit;
+        private final StmtNode body;
+        private final int bodyFrameSize;
+        private final While loop;
+
+        CountedLoop(Stmt.Counter counter, ExprNode limit, StmtNode body, int bodyFrameSize, While loop) {
+            this.counter = counter;
+            this.limit = adopt(limit);
+            this.body = body; // belongs to loop
+            this.bodyFrameSize = bodyFrameSize;
+            this.loop = adopt(loop);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object start = frame.slots[counter.slot];
+            Object end = limit.execute(frame);
+            if (!(start instanceof Double) || !(end instanceof Double))
+                return loop.execute(frame);
+
+            Frame bodyFrame = bodyFrameSize == 0 ? frame : new Frame(frame, bodyFrameSize);
+            double value = (Double) start;
+            double to = (Double) end;
+            Object result = NORMAL;
+            while (counter.inRange(value, to)) {
+                if (counter.read)
+                    frame.slots[counter.slot] = value;
+                result = body.execute(bodyFrame);
+                if (result != NORMAL)
+                    break;
+                value += counter.step;
+            }
+            frame.slots[counter.slot] = value;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            limit = (ExprNode) newChild;
+        }
+    }
+
+    // A while loop without a condition.
+    static final class Loop extends StmtNode {
+        private final StmtNode body;
+        private final int bodyFrameSize;
+        private ExprNode increment;
+
+        Loop(StmtNode body, int bodyFrameSize, ExprNode increment) {
+            this.body = adopt(body);
+            this.bodyFrameSize = bodyFrameSize;
+            this.increment = adopt(increment);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Frame bodyFrame = bodyFrameSize == 0 ? frame : new Frame(frame, bodyFrameSize);
+            for (;;) {
+                Object result = body.execute(bodyFrame);
+                if (result != NORMAL)
+                    return result;
+                if (increment != null)
+                    increment.execute(frame);
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            increment = (ExprNode) newChild;
+        }
+    }
+
+    static final class Return extends StmtNode {
+        private ExprNode value;
+
+        Return(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return value.execute(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static final class LocalFunction extends StmtNode {
+        private final int slot;
+        private final boolean cell; // the name is captured, maybe by the function itself
+        private final NodeFunction function;
+
+        LocalFunction(int slot, boolean cell, NodeFunction function) {
+            this.slot = slot;
+            this.cell = cell;
+            this.function = function;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if (!cell) {
+                frame.slots[slot] = function.close(frame);
+                return NORMAL;
+            }
+            Cell self = new Cell(null);
+            frame.slots[slot] = self;
+            self.value = function.close(frame);
+            return NORMAL;
+        }
+    }
+
+    static final class GlobalFunction extends StmtNode {
+        private final GlobalCell cell;
+        private final NodeFunction function;
+
+        GlobalFunction(GlobalCell cell, NodeFunction function) {
+            this.cell = cell;
+            this.function = function;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            cell.value = function.close(frame);
+            cell.defined = true;
+            return NORMAL;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.myfirstlanguage.mfl.nodes;
+
+// Thrown by a specialized execute method when the value isn't of the expected type.
+class UnexpectedResultException extends Exception {
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
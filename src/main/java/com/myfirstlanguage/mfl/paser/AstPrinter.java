@@ -1,51 +1,161 @@
-// package com.myfirstlanguage.mfl.paser;
+package com.myfirstlanguage.mfl.paser;
 
+import java.util.List;
 
-// import com.myfirstlanguage.mfl.paser.Expr.Variable;
+import com.myfirstlanguage.mfl.lexer.Token;
 
-// public class AstPrinter implements Expr.ExprVisitor<String> {
+/*
+ * Prints a tree as nested parentheses, one statement per line, to see what
+ * the parser made of a script. Only what the parser fills in is shown.
+ */
+public class AstPrinter implements Expr.ExprVisitor<String>, Stmt.StmtVisitor<String> {
 
-//     public String print(Expr expr) {
-//         return expr.accept(this);
-//     }
+    // Statements that had syntax errors are null in what the parser returns, and are left out.
+    public String print(List<Stmt> statements) {
+        StringBuilder builder = new StringBuilder();
+        for (Stmt stmt : statements) {
+            if (stmt != null)
+                builder.append(stmt.accept(this)).append("\n");
+        }
+        return builder.toString();
+    }
 
-//     @Override
-//     public String visit(Expr.Binary expr) {
-//         return parenthesize(expr.operator.lexeme, expr.left, expr.right);
-//     }
+    public String print(Expr expr) {
+        return expr.accept(this);
+    }
 
-//     @Override
-//     public String visit(Expr.Grouping expr) {
-//         return parenthesize("group", expr.expression);
-//     }
+    /* STATEMENTS */
 
-//     @Override
-//     public String visit(Expr.Literal expr) {
-//         if (expr.value == null)
-//             return "nil";
-//         return expr.value.toString();
-//     }
+    @Override
+    public String visit(Stmt.Expression stmt) {
+        return parenthesize(";", stmt.expression);
+    }
 
-//     @Override
-//     public String visit(Expr.Unary expr) {
-//         return parenthesize(expr.operator.lexeme, expr.expression);
-//     }
+    @Override
+    public String visit(Stmt.Print stmt) {
+        return parenthesize("print", stmt.expression);
+    }
 
-//     private String parenthesize(String name, Expr... exprs) {
-//         StringBuilder builder = new StringBuilder();
+    @Override
+    public String visit(Stmt.Var stmt) {
+        if (stmt.initializer == null)
+            return "(var " + stmt.name.lexeme + ")";
+        return parenthesize("var " + stmt.name.lexeme, stmt.initializer);
+    }
 
-//         builder.append("(").append(name);
-//         for (Expr expr : exprs) {
-//             builder.append(" ");
-//             builder.append(expr.accept(this));
-//         }
-//         builder.append(")");
+    @Override
+    public String visit(Stmt.Block stmt) {
+        return "(block" + statements(stmt.statements) + ")";
+    }
 
-//         return builder.toString();
-//     }
+    @Override
+    public String visit(Stmt.If stmt) {
+        String branches = " " + stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null)
+            branches += " " + stmt.elseBranch.accept(this);
+        return "(if " + optional(stmt.condition) + branches + ")";
+    }
 
-//     @Override
-//     public String visit(Variable expr) {
-//         return "variable?";
-//     }
-// }
+    @Override
+    public String visit(Stmt.While stmt) {
+        return "(while " + optional(stmt.condition) + " " + stmt.body.accept(this)
+                + " " + optional(stmt.increment) + ")";
+    }
+
+    @Override
+    public String visit(Stmt.Function stmt) {
+        StringBuilder params = new StringBuilder();
+        for (Token param : stmt.params) {
+            if (params.length() > 0)
+                params.append(" ");
+            params.append(param.lexeme);
+        }
+        // a lazy body that hasn't been parsed yet
+        String body = stmt.body == null ? " ..." : statements(stmt.body);
+        return "(fun " + stmt.name.lexeme + " (" + params + ")" + body + ")";
+    }
+
+    @Override
+    public String visit(Stmt.Return stmt) {
+        if (stmt.value == null)
+            return "(return)";
+        return parenthesize("return", stmt.value);
+    }
+
+    private String statements(List<Stmt> statements) {
+        StringBuilder builder = new StringBuilder();
+        for (Stmt stmt : statements) {
+            builder.append(" ").append(stmt.accept(this));
+        }
+        return builder.toString();
+    }
+
+    /* EXPRESSIONS */
+
+    @Override
+    public String visit(Expr.Binary expr) {
+        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visit(Expr.Grouping expr) {
+        return parenthesize("group", expr.expression);
+    }
+
+    @Override
+    public String visit(Expr.Literal expr) {
+        if (expr.value == null)
+            return "nil";
+        if (expr.value instanceof CharSequence)
+            return "\"" + expr.value + "\"";
+        return expr.value.toString();
+    }
+
+    @Override
+    public String visit(Expr.Unary expr) {
+        return parenthesize(expr.operator.lexeme, expr.expression);
+    }
+
+    @Override
+    public String visit(Expr.Variable expr) {
+        return expr.name.lexeme;
+    }
+
+    @Override
+    public String visit(Expr.Assign expr) {
+        return parenthesize("= " + expr.name.lexeme, expr.value);
+    }
+
+    @Override
+    public String visit(Expr.Logical expr) {
+        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visit(Expr.Call expr) {
+        Expr[] exprs = new Expr[expr.arguments.size() + 1];
+        exprs[0] = expr.callee;
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            exprs[i + 1] = expr.arguments.get(i);
+        }
+        return parenthesize("call", exprs);
+    }
+
+    // A missing condition or increment shows as nil.
+    private String optional(Expr expr) {
+        return expr == null ? "nil" : expr.accept(this);
+    }
+
+    private String parenthesize(String name, Expr... exprs) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("(").append(name);
+        for (Expr expr : exprs) {
+            builder.append(" ");
+            builder.append(expr.accept(this));
+        }
+        builder.append(")");
+
+        return builder.toString();
+    }
+}
@@ -63,6 +63,7 @@ public abstract class Expr {
         public final Expr left;
         public final Token operator;
         public final Expr right;
+        public boolean numeric; // filled in by the resolver: can only evaluate to a number
 
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -79,6 +80,7 @@ public abstract class Expr {
     public static class Unary extends Expr {
         public final Token operator;
         public final Expr expression;
+        public boolean numeric; // filled in by the resolver: can only evaluate to a number
 
         public Unary(Token operator, Expr expression) {
             this.operator = operator;
@@ -119,6 +121,11 @@ public abstract class Expr {
 
     public static class Variable extends Expr {
         public final Token name;
+        // filled in by the resolver, depth -1 means global
+        public int depth = -1;
+        public int slot = -1;
+        public boolean cell; // the local is shared with a closure, its slot holds a Cell
+        public int capture = -1; // or it belongs to an enclosing function: index into the closure's cells
 
         Variable(Token name) {
             this.name = name;
@@ -143,5 +150,10 @@ public abstract class Expr {
 
         public final Token name;
         public final Expr value;
+        // filled in by the resolver, depth -1 means global
+        public int depth = -1;
+        public int slot = -1;
+        public boolean cell;
+        public int capture = -1;
     }
 }
@@ -0,0 +1,45 @@
+package com.myfirstlanguage.mfl.paser;
+
+import java.util.List;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.Resolver;
+import com.myfirstlanguage.mfl.lexer.TokenBuffer;
+
+/*
+ * Where the body of a function skipped by a lazy Parser starts. The first
+ * call parses, optimizes and resolves it, then hands it to the function.
+ * Only functions at the top level are skipped, so a body never needs the
+ * scopes around it to be resolved. A cached program can be shared between
+ * threads, hence the lock.
+ */
+public final class LazyBody {
+    private final TokenBuffer tokens;
+    private final int start; // the token after the '{'
+
+    LazyBody(TokenBuffer tokens, int start) {
+        this.tokens = tokens;
+        this.start = start;
+    }
+
+    /*
+     * Fills in function's body, unless it has syntax errors or is nested too
+     * deeply to optimize, which go to reporter every time this is tried. Returns whether it worked.
+     */
+    public synchronized boolean parse(Stmt.Function function, ErrorReporter reporter) {
+        if (function.body != null)
+            return true;
+        List<Stmt> body = new Parser(tokens, reporter).functionBody(start);
+        if (body == null)
+            return false;
+        try {
+            body = new Optimizer().optimize(body);
+            new Resolver(reporter).resolveBody(function, body);
+        } catch (StackOverflowError e) {
+            reporter.error(function.name, "Expression nested too deeply.");
+            return false;
+        }
+        function.body = body;
+        return true;
+    }
+}
@@ -0,0 +1,286 @@
+package com.myfirstlanguage.mfl.paser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.myfirstlanguage.mfl.interpreter.Values;
+import com.myfirstlanguage.mfl.lexer.TokenType;
+
+/*
+ * Runs after the parser and hands back a simpler tree that does the same
+ * thing. Constant subexpressions are folded, groupings disappear, and if /
+ * while statements whose condition is a constant lose their dead branch.
+ * Anything that would be a runtime error, like "a" - 1, is left alone so it
+ * still fails when (and if) it runs.
+ */
+public class Optimizer implements Expr.ExprVisitor<Expr>, Stmt.StmtVisitor<Stmt> {
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt result = optimize(statement);
+            if (result != null)
+                optimized.add(result);
+        }
+        return optimized;
+    }
+
+    // Returns null when the statement does nothing at all.
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // For places that need a statement even if it does nothing.
+    private Stmt optimizeOrEmpty(Stmt stmt) {
+        Stmt result = optimize(stmt);
+        if (result == null)
+            return sameLine(new Stmt.Block(new ArrayList<>()), stmt);
+        return result;
+    }
+
+    // A statement made in place of stmt keeps its line.
+    private static Stmt sameLine(Stmt made, Stmt stmt) {
+        made.line = stmt.line;
+        return made;
+    }
+
+    private static boolean isConstant(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static Object valueOf(Expr expr) {
+        return ((Expr.Literal) expr).value;
+    }
+
+    // True when expr gives a number or throws, whatever its operands turn out to be.
+    private static boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal)
+            return valueOf(expr) instanceof Double;
+        if (expr instanceof Expr.Unary)
+            return ((Expr.Unary) expr).operator.type == TokenType.MINUS;
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return true;
+                case PLUS:
+                    return isNumeric(binary.left) || isNumeric(binary.right);
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumber(Expr expr, double value) {
+        return isConstant(expr) && valueOf(expr) instanceof Double
+                && ((Double) valueOf(expr)).equals(value);
+    }
+
+    /* STATEMENTS */
+
+    @Override
+    public Stmt visit(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        // a constant on its own line can't do anything
+        if (isConstant(expression))
+            return null;
+        return sameLine(new Stmt.Expression(expression), stmt);
+    }
+
+    @Override
+    public Stmt visit(Stmt.Print stmt) {
+        return sameLine(new Stmt.Print(optimize(stmt.expression)), stmt);
+    }
+
+    @Override
+    public Stmt visit(Stmt.Var stmt) {
+        Expr initializer = stmt.initializer == null ? null : optimize(stmt.initializer);
+        return sameLine(new Stmt.Var(stmt.name, initializer), stmt);
+    }
+
+    @Override
+    public Stmt visit(Stmt.Block stmt) {
+        return sameLine(new Stmt.Block(optimize(stmt.statements)), stmt);
+    }
+
+    @Override
+    public Stmt visit(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isConstant(condition)) {
+            if (Values.isTruthy(valueOf(condition)))
+                return optimize(stmt.thenBranch);
+            if (stmt.elseBranch != null)
+                return optimize(stmt.elseBranch);
+            return null;
+        }
+
+        Stmt elseBranch = stmt.elseBranch == null ? null : optimizeOrEmpty(stmt.elseBranch);
+        return sameLine(new Stmt.If(condition, optimizeOrEmpty(stmt.thenBranch), elseBranch), stmt);
+    }
+
+    @Override
+    public Stmt visit(Stmt.While stmt) {
+        Expr condition = stmt.condition == null ? null : optimize(stmt.condition);
+        if (condition != null && isConstant(condition)) {
+            if (!Values.isTruthy(valueOf(condition)))
+                return null;
+            // loops forever, so there is nothing to test each time round
+            condition = null;
+        }
+        Expr increment = stmt.increment == null ? null : optimize(stmt.increment);
+        return sameLine(new Stmt.While(condition, optimizeOrEmpty(stmt.body), increment), stmt);
+    }
+
+    @Override
+    public Stmt visit(Stmt.Function stmt) {
+        // a lazy body is optimized once it has been parsed
+        if (stmt.lazyBody != null)
+            return stmt;
+        return sameLine(new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body)), stmt);
+    }
+
+    @Override
+    public Stmt visit(Stmt.Return stmt) {
+        Expr value = stmt.value == null ? null : optimize(stmt.value);
+        return sameLine(new Stmt.Return(stmt.keyword, value), stmt);
+    }
+
+    /* EXPRESSIONS */
+
+    @Override
+    public Expr visit(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visit(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visit(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visit(Expr.Assign expr) {
+        return new Expr.Assign(expr.name, optimize(expr.value));
+    }
+
+    @Override
+    public Expr visit(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visit(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (isConstant(left)) {
+            boolean truthy = Values.isTruthy(valueOf(left));
+            boolean isOr = expr.operator.type == TokenType.OR;
+            // "or" keeps a truthy left side and "and" keeps a falsey one, otherwise it is the right
+            return truthy == isOr ? left : right;
+        }
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visit(Expr.Unary expr) {
+        Expr operand = optimize(expr.expression);
+
+        if (isConstant(operand)) {
+            Object value = valueOf(operand);
+            if (expr.operator.type == TokenType.NOT)
+                return new Expr.Literal(!Values.isTruthy(value));
+            if (value instanceof Double)
+                return new Expr.Literal(-(double) value);
+        }
+
+        // -(-x) is x for any number
+        if (expr.operator.type == TokenType.MINUS && operand instanceof Expr.Unary) {
+            Expr.Unary inner = (Expr.Unary) operand;
+            if (inner.operator.type == TokenType.MINUS && isNumeric(inner.expression))
+                return inner.expression;
+        }
+
+        return new Expr.Unary(expr.operator, operand);
+    }
+
+    @Override
+    public Expr visit(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (isConstant(left) && isConstant(right)) {
+            Object folded = fold(expr.operator.type, valueOf(left), valueOf(right));
+            if (folded != null)
+                return new Expr.Literal(folded);
+        }
+
+        // Identities that hold for every number, including -0, NaN and infinity.
+        switch (expr.operator.type) {
+            case STAR:
+                if (isNumber(right, 1) && isNumeric(left))
+                    return left;
+                if (isNumber(left, 1) && isNumeric(right))
+                    return right;
+                break;
+            case SLASH:
+                if (isNumber(right, 1) && isNumeric(left))
+                    return left;
+                break;
+            case MINUS:
+                if (isNumber(right, 0) && isNumeric(left))
+                    return left;
+                break;
+            default:
+                break;
+        }
+
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    // Returns null when the operation would be a runtime error.
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL:
+                return Values.isEqual(left, right);
+            case NOT_EQUAL:
+                return !Values.isEqual(left, right);
+            case PLUS:
+                if (left instanceof String && right instanceof String)
+                    return (String) left + (String) right;
+                break;
+            default:
+                break;
+        }
+
+        if (!(left instanceof Double && right instanceof Double))
+            return null;
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator) {
+            case PLUS: return a + b;
+            case MINUS: return a - b;
+            case STAR: return a * b;
+            case SLASH: return a / b;
+            case GREATER: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case LESS: return a < b;
+            case LESS_EQUAL: return a <= b;
+            default: return null;
+        }
+    }
+}
@@ -4,16 +4,34 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import com.myfirstlanguage.mfl.Mfl;
+import com.myfirstlanguage.mfl.ErrorReporter;
 import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.lexer.TokenBuffer;
 import com.myfirstlanguage.mfl.lexer.TokenType;
 
 public class Parser {
-    private final List<Token> tokens;
+    // Token objects are only made for the tokens the tree keeps hold of.
+    private final TokenBuffer tokens;
+    private final ErrorReporter reporter;
+    private final boolean lazy;
     private int current = 0;
+    private int depth = 0; // of the blocks we're in, 0 at the top level
+    private int errors = 0;
 
-    public Parser(List<Token> tokens) {
+    public Parser(TokenBuffer tokens, ErrorReporter reporter) {
+        this(tokens, reporter, false);
+    }
+
+    /*
+     * A lazy parser skips the bodies of functions declared at the top level,
+     * only checking their braces match, and leaves a LazyBody to parse them
+     * the first time they are called. Syntax errors in them are only found
+     * then. The tokens have to stay around for as long as the program does.
+     */
+    public Parser(TokenBuffer tokens, ErrorReporter reporter, boolean lazy) {
         this.tokens = tokens;
+        this.reporter = reporter;
+        this.lazy = lazy;
     }
 
     /* PARSING EXPRESSIONS: */
@@ -31,14 +49,29 @@ public class Parser {
         return statements;
     }
 
+    /*
+     * For running a script while it is still being read: parse() a declaration
+     * at a time. The tokens each one came from are let go straight away.
+     */
+    public boolean hasNext() {
+        return !atEnd();
+    }
+
+    public Stmt parseNext() {
+        Stmt statement = declaration();
+        tokens.release(current);
+        return statement;
+    }
+
     /* HANDLING STATEMENTS */
     private Stmt declaration() {
         try {
+            int line = tokens.line(current);
             if (advanceIf(TokenType.VAR)) {
-                return varDeclaration();
+                return at(line, varDeclaration());
             }
             if (advanceIf(TokenType.FUN)) {
-                return function("function");
+                return at(line, function("function"));
             }
             return statement();
         } catch (ParseError error) {
@@ -48,28 +81,58 @@ public class Parser {
     }
 
     private Stmt.Function function(String kind) {
-        Token name = advanceIfElseThrow(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+        advanceIfElseThrow(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+        Token name = previous();
         advanceIfElseThrow(TokenType.LEFT_BRACKET, "Expect '{} after " + kind + " name.");
         List<Token> parameters = new ArrayList<>();
-        if (!advanceIf(TokenType.RIGHT_BRACKET)) {
+        if (!checkIf(TokenType.RIGHT_BRACKET)) {
             do {
                 if (parameters.size() >= 255) {
-                    error(peek(), "Can't have more than 255 parameters.");
+                    error(current, "Can't have more than 255 parameters.");
                 }
 
-                parameters.add(
-                        advanceIfElseThrow(TokenType.IDENTIFIER, "Expect parameter name."));
+                advanceIfElseThrow(TokenType.IDENTIFIER, "Expect parameter name.");
+                parameters.add(previous());
             } while (advanceIf(TokenType.COMMA));
         }
         advanceIfElseThrow(TokenType.RIGHT_BRACKET, "Expect ')' after parameters.");
 
         advanceIfElseThrow(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        if (lazy && depth == 0)
+            return new Stmt.Function(name, parameters, skipBody());
         List<Stmt> body = block();
         return new Stmt.Function(name, parameters, body);
     }
 
+    private LazyBody skipBody() {
+        int start = current;
+        int open = 1;
+        while (!atEnd()) {
+            TokenType type = peek();
+            advance();
+            if (type == TokenType.LEFT_BRACE) {
+                open++;
+            } else if (type == TokenType.RIGHT_BRACE && --open == 0) {
+                return new LazyBody(tokens, start);
+            }
+        }
+        throw error(current, "Expect '}' after block.");
+    }
+
+    // The body of a function, from just after its '{'. Null if it has any syntax errors.
+    List<Stmt> functionBody(int start) {
+        current = start;
+        try {
+            List<Stmt> body = block();
+            return errors == 0 ? body : null;
+        } catch (ParseError error) {
+            return null;
+        }
+    }
+
     private Stmt varDeclaration() {
-        Token name = advanceIfElseThrow(TokenType.IDENTIFIER, "Expect variable name.");
+        advanceIfElseThrow(TokenType.IDENTIFIER, "Expect variable name.");
+        Token name = previous();
 
         Expr initializer = null;
         if (advanceIf(TokenType.EQUAL)) {
@@ -81,19 +144,25 @@ public class Parser {
     }
 
     private Stmt statement() {
+        int line = tokens.line(current);
         if (advanceIf(TokenType.IF))
-            return ifStatement();
+            return at(line, ifStatement());
         if (advanceIf(TokenType.PRINT))
-            return printStatement();
+            return at(line, printStatement());
         if (advanceIf(TokenType.RETURN))
-            return returnStatement();
-        if (advanceIf(TokenType.WHILE))
-            return whileStatement();
+            return at(line, returnStatement());
         if (advanceIf(TokenType.WHILE))
+            return at(line, whileStatement());
+        if (advanceIf(TokenType.FOR))
             return forStatement();
         if (advanceIf(TokenType.LEFT_BRACE))
-            return new Stmt.Block(block());
-        return expressionStatement();
+            return at(line, new Stmt.Block(block()));
+        return at(line, expressionStatement());
+    }
+
+    private static Stmt at(int line, Stmt stmt) {
+        stmt.line = line;
+        return stmt;
     }
 
     private Stmt returnStatement() {
@@ -113,19 +182,21 @@ public class Parser {
         advanceIfElseThrow(TokenType.RIGHT_BRACKET, "Expect ')' after condition.");
         Stmt body = statement();
 
-        return new Stmt.While(condition, body);
+        return new Stmt.While(condition, body, null);
     }
 
     private Stmt forStatement() {
+        int line = previous().line;
         advanceIfElseThrow(TokenType.LEFT_BRACKET, "Expect '(' after 'for'.");
 
         Stmt initializer;
+        int initializerLine = tokens.line(current);
         if (advanceIf(TokenType.SEMICOLON)) {
             initializer = null;
         } else if (advanceIf(TokenType.VAR)) {
-            initializer = varDeclaration();
+            initializer = at(initializerLine, varDeclaration());
         } else {
-            initializer = expressionStatement();
+            initializer = at(initializerLine, expressionStatement());
         }
 
         Expr condition = null;
@@ -141,19 +212,13 @@ public class Parser {
         advanceIfElseThrow(TokenType.RIGHT_BRACKET, "Expect ')' after for clauses.");
 
         Stmt body = statement();
-        if (increment != null) {
-            body = new Stmt.Block(
-                    Arrays.asList(
-                            body,
-                            new Stmt.Expression(increment)));
-        }
 
         if (condition == null)
             condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+        body = at(line, new Stmt.While(condition, body, increment));
 
         if (initializer != null) {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+            body = at(line, new Stmt.Block(Arrays.asList(initializer, body)));
         }
 
         return body;
@@ -190,195 +255,270 @@ public class Parser {
     private List<Stmt> block() {
         List<Stmt> statements = new ArrayList<>();
 
+        depth++;
         while (!checkIf(TokenType.RIGHT_BRACE) && !atEnd()) {
             statements.add(declaration());
         }
+        depth--;
 
         advanceIfElseThrow(TokenType.RIGHT_BRACE, "Expect '}' after block.");
         return statements;
     }
 
-    private Expr expression() {
-        return assignment();
-    }
-
-    private Expr assignment() {
-        Expr expr = or();
-
-        if (advanceIf(TokenType.EQUAL)) {
-            Token equals = previous();
-            Expr value = assignment();
-
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable) expr).name;
-                return new Expr.Assign(name, value);
-            }
-
-            error(equals, "Invalid assignment target.");
-        }
-
-        return expr;
-    }
-
-    private Expr or() {
-        Expr expr = and();
-
-        while (advanceIf(TokenType.OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr and() {
-        Expr expr = equality();
-
-        while (advanceIf(TokenType.AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    // == !=
-    private Expr equality() {
-        Expr expr = comparison();
-
-        while (advanceIf(TokenType.EQUAL_EQUAL, TokenType.NOT_EQUAL)) {
-            expr = new Expr.Binary(expr, previous(), comparison());
-        }
-        return expr;
-    }
-
-    // > >= < <=
-    private Expr comparison() {
-        Expr expr = term();
-
-        while (advanceIf(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-            expr = new Expr.Binary(expr, previous(), term());
+    /*
+     * Expressions are parsed by precedence climbing, with the precedences in
+     * the tables below instead of a method per level, and with an explicit
+     * stack instead of recursion, so nesting depth is only limited by the
+     * heap. Each entry on the stack is something still waiting for its next
+     * operand: a prefix operator, the left side of an infix one, a grouping
+     * or a call's argument list. It builds the same trees the grammar does:
+     *
+     *   expression -> assignment
+     *   assignment -> IDENTIFIER "=" assignment | or
+     *   or         -> and ( "or" and )*
+     *   and        -> equality ( "and" equality )*
+     *   equality   -> comparison ( ( "!=" | "==" ) comparison )*
+     *   comparison -> term ( ( ">" | ">=" | "<" | "<=" ) term )*
+     *   term       -> factor ( ( "-" | "+" ) factor )*
+     *   factor     -> unary ( ( "/" | "*" ) unary )*
+     *   unary      -> ( "!" | "-" ) unary | call
+     *   call       -> primary ( "(" arguments? ")" )*
+     *   primary    -> literal | IDENTIFIER | "(" expression ")"
+     */
+    private static final int NONE = 0;
+    private static final int ASSIGNMENT = 1;
+    private static final int OR = 2;
+    private static final int AND = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+    private static final int CALL = 9;
+
+    // what a token does after an operand, and how tightly it binds
+    private static final byte[] INFIX = new byte[TokenType.values().length];
+    private static final boolean[] LOGICAL = new boolean[TokenType.values().length];
+    private static final boolean[] PREFIX = new boolean[TokenType.values().length];
+
+    private static void infix(TokenType type, int precedence) {
+        INFIX[type.ordinal()] = (byte) precedence;
+    }
+
+    static {
+        infix(TokenType.EQUAL, ASSIGNMENT);
+        infix(TokenType.OR, OR);
+        infix(TokenType.AND, AND);
+        infix(TokenType.EQUAL_EQUAL, EQUALITY);
+        infix(TokenType.NOT_EQUAL, EQUALITY);
+        infix(TokenType.GREATER, COMPARISON);
+        infix(TokenType.GREATER_EQUAL, COMPARISON);
+        infix(TokenType.LESS, COMPARISON);
+        infix(TokenType.LESS_EQUAL, COMPARISON);
+        infix(TokenType.PLUS, TERM);
+        infix(TokenType.MINUS, TERM);
+        infix(TokenType.STAR, FACTOR);
+        infix(TokenType.SLASH, FACTOR);
+        infix(TokenType.LEFT_BRACKET, CALL);
+        LOGICAL[TokenType.OR.ordinal()] = true;
+        LOGICAL[TokenType.AND.ordinal()] = true;
+        PREFIX[TokenType.NOT.ordinal()] = true;
+        PREFIX[TokenType.MINUS.ordinal()] = true;
+    }
+
+    // what an entry on the stack is waiting to finish
+    private static final byte PREFIX_OPERATOR = 0;
+    private static final byte INFIX_OPERATOR = 1;
+    private static final byte ASSIGN = 2;
+    private static final byte GROUPING = 3;
+    private static final byte ARGUMENTS = 4;
+
+    private static final class Pending {
+        byte kind;
+        int token; // the operator, or the '=' of an assignment
+        int precedence; // of the lowest operator its operand can have
+        Expr left; // left operand, assignment target or callee
+        List<Expr> arguments;
+    }
+
+    // reused from one expression to the next
+    private Pending[] pending = new Pending[16];
+    private int pendingCount = 0;
+
+    private Pending push(byte kind, int token, int precedence) {
+        if (pendingCount == pending.length)
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        Pending entry = pending[pendingCount];
+        if (entry == null) {
+            entry = new Pending();
+            pending[pendingCount] = entry;
         }
-        return expr;
+        pendingCount++;
+        entry.kind = kind;
+        entry.token = token;
+        entry.precedence = precedence;
+        return entry;
     }
 
-    // + -
-    private Expr term() {
-        Expr expr = factor();
-
-        while (advanceIf(TokenType.PLUS, TokenType.MINUS)) {
-            expr = new Expr.Binary(expr, previous(), factor());
+    private Expr expression() {
+        try {
+            return climb();
+        } finally {
+            // a syntax error leaves entries behind
+            for (int i = 0; i < pendingCount; i++) {
+                pending[i].left = null;
+                pending[i].arguments = null;
+            }
+            pendingCount = 0;
         }
-        return expr;
     }
 
-    // * /
-    private Expr factor() {
-        Expr expr = unary();
-
-        while (advanceIf(TokenType.STAR, TokenType.SLASH)) {
-            expr = new Expr.Binary(expr, previous(), unary());
-        }
-        return expr;
-    }
+    private Expr climb() {
+        operands: for (;;) {
+            Expr expr = operand();
+
+            for (;;) {
+                int precedence = pendingCount == 0 ? ASSIGNMENT : pending[pendingCount - 1].precedence;
+                TokenType type = peek();
+                int binds = INFIX[type.ordinal()];
+                if (binds != NONE && binds >= precedence) {
+                    int operator = current;
+                    advance();
+                    if (binds == CALL) {
+                        if (!checkIf(TokenType.RIGHT_BRACKET)) {
+                            Pending call = push(ARGUMENTS, operator, ASSIGNMENT);
+                            call.left = expr;
+                            call.arguments = new ArrayList<>();
+                            continue operands;
+                        }
+                        advance();
+                        expr = new Expr.Call(expr, previous(), new ArrayList<>());
+                        continue;
+                    }
+                    // assignment is right associative, so its value can be another one
+                    push(binds == ASSIGNMENT ? ASSIGN : INFIX_OPERATOR, operator,
+                            binds == ASSIGNMENT ? ASSIGNMENT : binds + 1).left = expr;
+                    continue operands;
+                }
 
-    // ! -
-    private Expr unary() {
-        if (advanceIf(TokenType.NOT, TokenType.MINUS)) {
-            return new Expr.Unary(previous(), unary());
+                if (pendingCount == 0)
+                    return expr;
+                Pending entry = pending[--pendingCount];
+                Expr left = entry.left;
+                entry.left = null;
+                switch (entry.kind) {
+                    case PREFIX_OPERATOR:
+                        expr = new Expr.Unary(tokens.token(entry.token), expr);
+                        break;
+                    case INFIX_OPERATOR: {
+                        Token operator = tokens.token(entry.token);
+                        expr = LOGICAL[operator.type.ordinal()]
+                                ? new Expr.Logical(left, operator, expr)
+                                : new Expr.Binary(left, operator, expr);
+                        break;
+                    }
+                    case ASSIGN:
+                        if (left instanceof Expr.Variable) {
+                            expr = new Expr.Assign(((Expr.Variable) left).name, expr);
+                        } else {
+                            error(entry.token, "Invalid assignment target.");
+                            expr = left;
+                        }
+                        break;
+                    case GROUPING:
+                        advanceIfElseThrow(TokenType.RIGHT_BRACKET, "Expect ')' after expression.");
+                        expr = new Expr.Grouping(expr);
+                        break;
+                    default: {
+                        List<Expr> arguments = entry.arguments;
+                        entry.arguments = null;
+                        arguments.add(expr);
+                        if (advanceIf(TokenType.COMMA)) {
+                            if (arguments.size() >= 255) {
+                                error(current, "Can't have more than 255 arguments.");
+                            }
+                            Pending call = push(ARGUMENTS, entry.token, ASSIGNMENT);
+                            call.left = left;
+                            call.arguments = arguments;
+                            continue operands;
+                        }
+                        advanceIfElseThrow(TokenType.RIGHT_BRACKET, "Expect ')' after arguments.");
+                        expr = new Expr.Call(left, previous(), arguments);
+                        break;
+                    }
+                }
+            }
         }
-        return call();
     }
 
-    private Expr call() {
-        Expr expr = primary();
-        while (true) {
-            if (advanceIf(TokenType.LEFT_BRACKET)) {
-                expr = finishCall(expr);
+    // Prefix operators and groupings go on the stack, up to the first primary.
+    private Expr operand() {
+        for (;;) {
+            TokenType type = peek();
+            if (PREFIX[type.ordinal()]) {
+                push(PREFIX_OPERATOR, current, UNARY);
+                advance();
+            } else if (type == TokenType.LEFT_BRACKET) {
+                push(GROUPING, current, ASSIGNMENT);
+                advance();
             } else {
-                break;
+                return primary();
             }
         }
-
-        return expr;
-    }
-
-    private Expr finishCall(Expr callee) {
-        List<Expr> arguments = new ArrayList<>();
-        if (!checkIf(TokenType.RIGHT_BRACKET)) {
-            do {
-                if (arguments.size() >= 255) {
-                    error(peek(), "Can't have more than 255 arguments.");
-                }
-                arguments.add(expression());
-            } while (advanceIf(TokenType.COMMA));
-        }
-
-        Token paren = advanceIfElseThrow(TokenType.RIGHT_BRACKET,
-                "Expect ')' after arguments.");
-
-        return new Expr.Call(callee, paren, arguments);
     }
 
     private Expr primary() {
-        if (advanceIf(TokenType.FALSE))
-            return new Expr.Literal(false);
-        if (advanceIf(TokenType.TRUE))
-            return new Expr.Literal(true);
-        if (advanceIf(TokenType.NIL))
-            return new Expr.Literal(null);
-
-        if (advanceIf(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expr.Literal(previous().value);
-        }
-
-        if (advanceIf(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
-        }
-
-        if (advanceIf(TokenType.LEFT_BRACKET)) {
-            Expr expr = expression();
-            advanceIfElseThrow(TokenType.RIGHT_BRACKET, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
+        switch (peek()) {
+            case FALSE:
+                advance();
+                return new Expr.Literal(false);
+            case TRUE:
+                advance();
+                return new Expr.Literal(true);
+            case NIL:
+                advance();
+                return new Expr.Literal(null);
+            case NUMBER:
+            case STRING:
+                advance();
+                return new Expr.Literal(tokens.value(current - 1));
+            case IDENTIFIER:
+                advance();
+                return new Expr.Variable(previous());
+            default:
+                throw error(current, "Expect expression.");
         }
-
-        throw error(peek(), "Expect expression.");
     }
 
     // helper functions:
-    private Token peek() {
-        return tokens.get(current);
+    private TokenType peek() {
+        return tokens.type(current);
     }
 
     private boolean atEnd() {
-        return peek().type == TokenType.EOF;
+        return peek() == TokenType.EOF;
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
-    private Token advance() {
+    private void advance() {
         if (!atEnd())
             current++;
-        return previous();
     }
 
     private boolean checkIf(TokenType type) {
         if (atEnd())
             return false;
-        return peek().type == type;
+        return peek() == type;
     }
 
     // called match
-    private boolean advanceIf(TokenType... types) {
-        for (TokenType type : types) {
-            if (checkIf(type)) {
-                advance();
-                return true;
-            }
+    private boolean advanceIf(TokenType type) {
+        if (checkIf(type)) {
+            advance();
+            return true;
         }
         return false;
     }
@@ -391,10 +531,10 @@ public class Parser {
         advance();
 
         while (!atEnd()) {
-            if (previous().type == TokenType.SEMICOLON)
+            if (tokens.type(current - 1) == TokenType.SEMICOLON)
                 return;
 
-            switch (peek().type) {
+            switch (peek()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -415,16 +555,17 @@ public class Parser {
     }
 
     // called consume
-    private Token advanceIfElseThrow(TokenType type, String message) {
+    private void advanceIfElseThrow(TokenType type, String message) {
         if (checkIf(type))
-            return advance();
+            advance();
         else {
-            throw error(peek(), message);
+            throw error(current, message);
         }
     }
 
-    private ParseError error(Token token, String message) {
-        Mfl.error(token, message);
+    private ParseError error(int token, String message) {
+        errors++;
+        reporter.error(tokens.token(token), message);
         return new ParseError();
     }
 
@@ -0,0 +1,629 @@
+package com.myfirstlanguage.mfl.paser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.lexer.TokenType;
+
+/*
+ * A program that has been through the whole front end (parsed, optimized and
+ * resolved), saved so it can be run again without any of that. It lives next
+ * to the script, so foo.mfl gets foo.mflc. The layout is:
+ *
+ *   "MFLC", format version (4 bytes each)
+ *   SHA-256 of the script's bytes (32 bytes)
+ *   string table: count, then each string as a length and UTF-8 bytes
+ *   program: count, then each statement
+ *
+ * Every node is a tag byte followed by its fields in the order they are
+ * declared, with a 0 tag for a missing one. Tokens are a type, an index
+ * into the string table for the lexeme, and how far their line is from the
+ * line before; names leave out the type as it is always IDENTIFIER.
+ * Statements end with their own line, written the same way.
+ * Whole numbers are written as varints, and fields that can be -1 are stored
+ * plus one. Number literals that are small whole numbers are varints too.
+ * The cell flag of a variable goes in the low bit of its slot, and a
+ * variable that isn't a local has its capture number in place of the slot.
+ * A counted loop's Counter is made again from the loop, so all that's kept
+ * of it is a byte: 0 for none, 1 for one, 2 for one whose body reads it.
+ * Bump VERSION whenever any of this, or what the resolver fills in, changes.
+ */
+public final class ProgramFile {
+    public static final int VERSION = 6;
+    private static final int MAGIC = 0x4d464c43; // "MFLC"
+    private static final int HASH_LENGTH = 32;
+
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    // expressions
+    private static final byte BINARY = 1;
+    private static final byte UNARY = 2;
+    private static final byte GROUPING = 3;
+    private static final byte NIL = 4;
+    private static final byte TRUE = 5;
+    private static final byte FALSE = 6;
+    private static final byte NUMBER = 7;
+    private static final byte STRING = 8;
+    private static final byte VARIABLE = 9;
+    private static final byte ASSIGN = 10;
+    private static final byte LOGICAL = 11;
+    private static final byte CALL = 12;
+    private static final byte INTEGER = 13;
+    // statements
+    private static final byte EXPRESSION = 20;
+    private static final byte PRINT = 21;
+    private static final byte VAR = 22;
+    private static final byte BLOCK = 23;
+    private static final byte IF = 24;
+    private static final byte WHILE = 25;
+    private static final byte FUNCTION = 26;
+    private static final byte RETURN = 27;
+
+    private ProgramFile() {
+    }
+
+    public static Path pathFor(Path script) {
+        String name = script.getFileName().toString();
+        return script.resolveSibling(name.endsWith(".mfl") ? name + "c" : name + ".mflc");
+    }
+
+    public static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256.", e);
+        }
+    }
+
+    /*
+     * Writes the file through a temporary one that is then moved into place,
+     * so nobody reading it at the same time sees half of it.
+     */
+    public static void write(Path file, byte[] sourceHash, List<Stmt> program) throws IOException {
+        Writer writer = new Writer();
+        writer.statements(program);
+
+        // not Files.createTempFile, that would make it readable by nobody else
+        Path temp = file.resolveSibling(file.getFileName() + "." + ProcessHandle.current().pid()
+                + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.write(sourceHash);
+                ByteArrayOutputStream strings = new ByteArrayOutputStream();
+                writeVarint(strings, writer.strings.size());
+                for (String string : writer.strings) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    writeVarint(strings, bytes.length);
+                    strings.write(bytes);
+                }
+                strings.writeTo(out);
+                writer.body.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * The program in file, or null if there is no such file or it isn't
+     * usable: made from a different version of the script, by a different
+     * version of MFL, cut short or otherwise damaged. Anything that goes
+     * wrong while decoding it counts as that. The file is memory-mapped
+     * rather than read.
+     */
+    public static List<Stmt> read(Path file, byte[] sourceHash) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, sourceHash))
+                return null;
+            return new Reader(buffer).program();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static final class Writer implements Expr.ExprVisitor<Void>, Stmt.StmtVisitor<Void> {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private int line = 0; // of the last token or statement written
+
+        void statements(List<Stmt> statements) {
+            varint(statements.size());
+            for (Stmt statement : statements) {
+                statement(statement);
+            }
+        }
+
+        private void statement(Stmt stmt) {
+            if (stmt == null) {
+                body.write(0);
+            } else {
+                stmt.accept(this);
+                line(stmt.line);
+            }
+        }
+
+        private void expression(Expr expr) {
+            if (expr == null) {
+                body.write(0);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        private void token(Token token) {
+            body.write(token.type.ordinal());
+            name(token);
+        }
+
+        private void name(Token token) {
+            varint(string(token.lexeme));
+            line(token.line);
+        }
+
+        private void line(int line) {
+            int delta = line - this.line;
+            varint((delta << 1) ^ (delta >> 31));
+            this.line = line;
+        }
+
+        private void variable(int depth, int slot, boolean cell, int capture) {
+            varint(depth + 1);
+            if (depth >= 0) {
+                varint(slot << 1 | (cell ? 1 : 0));
+            } else {
+                varint(capture + 1);
+            }
+        }
+
+        private int string(String string) {
+            Integer index = stringIndexes.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                stringIndexes.put(string, index);
+            }
+            return index;
+        }
+
+        private void varint(int value) {
+            writeVarint(body, value);
+        }
+
+        private void number(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                body.write((int) (bits >>> shift));
+            }
+        }
+
+        @Override
+        public Void visit(Expr.Binary expr) {
+            body.write(BINARY);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            body.write(expr.numeric ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Expr.Unary expr) {
+            body.write(UNARY);
+            token(expr.operator);
+            expression(expr.expression);
+            body.write(expr.numeric ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Expr.Grouping expr) {
+            body.write(GROUPING);
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visit(Expr.Literal expr) {
+            Object value = expr.value;
+            if (value == null) {
+                body.write(NIL);
+            } else if (value instanceof Boolean) {
+                body.write((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                double number = (Double) value;
+                int integer = (int) number;
+                if (integer == number && integer >= 0 && Double.doubleToRawLongBits(number) != NEGATIVE_ZERO) {
+                    body.write(INTEGER);
+                    varint(integer);
+                } else {
+                    body.write(NUMBER);
+                    number(number);
+                }
+            } else {
+                body.write(STRING);
+                varint(string((String) value));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Expr.Variable expr) {
+            body.write(VARIABLE);
+            name(expr.name);
+            variable(expr.depth, expr.slot, expr.cell, expr.capture);
+            return null;
+        }
+
+        @Override
+        public Void visit(Expr.Assign expr) {
+            body.write(ASSIGN);
+            name(expr.name);
+            expression(expr.value);
+            variable(expr.depth, expr.slot, expr.cell, expr.capture);
+            return null;
+        }
+
+        @Override
+        public Void visit(Expr.Logical expr) {
+            body.write(LOGICAL);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visit(Expr.Call expr) {
+            body.write(CALL);
+            expression(expr.callee);
+            token(expr.paren);
+            varint(expr.arguments.size());
+            for (Expr argument : expr.arguments) {
+                expression(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.Expression stmt) {
+            body.write(EXPRESSION);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.Print stmt) {
+            body.write(PRINT);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.Var stmt) {
+            body.write(VAR);
+            name(stmt.name);
+            expression(stmt.initializer);
+            varint((stmt.slot + 1) << 1 | (stmt.cell ? 1 : 0));
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.Block stmt) {
+            body.write(BLOCK);
+            statements(stmt.statements);
+            varint(stmt.slots);
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.If stmt) {
+            body.write(IF);
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            statement(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.While stmt) {
+            body.write(WHILE);
+            expression(stmt.condition);
+            statement(stmt.body);
+            expression(stmt.increment);
+            body.write(stmt.counter == null ? 0 : stmt.counter.read ? 2 : 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.Function stmt) {
+            body.write(FUNCTION);
+            name(stmt.name);
+            varint(stmt.params.size());
+            for (Token param : stmt.params) {
+                name(param);
+            }
+            statements(stmt.body);
+            varint((stmt.slot + 1) << 1 | (stmt.cell ? 1 : 0));
+            varint(stmt.slots);
+            varint(stmt.cellParams.length);
+            for (int slot : stmt.cellParams) {
+                varint(slot);
+            }
+            varint(stmt.captures.size());
+            for (Stmt.Capture capture : stmt.captures) {
+                name(capture.name);
+                varint(capture.depth + 1);
+                varint(capture.slot);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Stmt.Return stmt) {
+            body.write(RETURN);
+            token(stmt.keyword);
+            expression(stmt.value);
+            body.write(stmt.tailCall ? 1 : 0);
+            return null;
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final String[] strings;
+        private int line = 0; // of the last token or statement read
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+            strings = new String[length()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[length()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        List<Stmt> program() {
+            List<Stmt> program = statements();
+            if (buffer.hasRemaining())
+                throw new IllegalArgumentException("Junk after the program.");
+            return program;
+        }
+
+        private List<Stmt> statements() {
+            int count = length();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private Stmt statement() {
+            Stmt stmt = statementFields();
+            if (stmt != null)
+                stmt.line = line();
+            return stmt;
+        }
+
+        private Stmt statementFields() {
+            byte tag = buffer.get();
+            switch (tag) {
+                case 0:
+                    return null;
+                case EXPRESSION:
+                    return new Stmt.Expression(expression());
+                case PRINT:
+                    return new Stmt.Print(expression());
+                case VAR: {
+                    Stmt.Var stmt = new Stmt.Var(name(), expression());
+                    int slot = varint();
+                    stmt.slot = (slot >> 1) - 1;
+                    stmt.cell = (slot & 1) != 0;
+                    return stmt;
+                }
+                case BLOCK: {
+                    Stmt.Block stmt = new Stmt.Block(statements());
+                    stmt.slots = varint();
+                    return stmt;
+                }
+                case IF:
+                    return new Stmt.If(expression(), statement(), statement());
+                case WHILE: {
+                    Stmt.While stmt = new Stmt.While(expression(), statement(), expression());
+                    byte counted = buffer.get();
+                    if (counted != 0)
+                        stmt.counter = new Stmt.Counter(stmt, counted == 2);
+                    return stmt;
+                }
+                case FUNCTION: {
+                    Token name = name();
+                    int count = length();
+                    List<Token> params = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        params.add(name());
+                    }
+                    Stmt.Function stmt = new Stmt.Function(name, params, statements());
+                    int slot = varint();
+                    stmt.slot = (slot >> 1) - 1;
+                    stmt.cell = (slot & 1) != 0;
+                    stmt.slots = varint();
+                    stmt.cellParams = new int[length()];
+                    for (int i = 0; i < stmt.cellParams.length; i++) {
+                        stmt.cellParams[i] = varint();
+                    }
+                    count = length();
+                    List<Stmt.Capture> captures = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        captures.add(new Stmt.Capture(name(), varint() - 1, varint()));
+                    }
+                    stmt.captures = captures;
+                    return stmt;
+                }
+                case RETURN: {
+                    Stmt.Return stmt = new Stmt.Return(token(), expression());
+                    stmt.tailCall = buffer.get() != 0;
+                    return stmt;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown statement tag " + tag + ".");
+            }
+        }
+
+        private Expr expression() {
+            byte tag = buffer.get();
+            switch (tag) {
+                case 0:
+                    return null;
+                case BINARY: {
+                    Expr.Binary expr = new Expr.Binary(expression(), token(), expression());
+                    expr.numeric = buffer.get() != 0;
+                    return expr;
+                }
+                case UNARY: {
+                    Expr.Unary expr = new Expr.Unary(token(), expression());
+                    expr.numeric = buffer.get() != 0;
+                    return expr;
+                }
+                case GROUPING:
+                    return new Expr.Grouping(expression());
+                case NIL:
+                    return new Expr.Literal(null);
+                case TRUE:
+                    return new Expr.Literal(true);
+                case FALSE:
+                    return new Expr.Literal(false);
+                case NUMBER:
+                    return new Expr.Literal(buffer.getDouble());
+                case INTEGER:
+                    return new Expr.Literal((double) varint());
+                case STRING:
+                    return new Expr.Literal(strings[varint()]);
+                case VARIABLE: {
+                    Expr.Variable expr = new Expr.Variable(name());
+                    expr.depth = varint() - 1;
+                    int slot = varint();
+                    if (expr.depth >= 0) {
+                        expr.slot = slot >> 1;
+                        expr.cell = (slot & 1) != 0;
+                    } else {
+                        expr.capture = slot - 1;
+                    }
+                    return expr;
+                }
+                case ASSIGN: {
+                    Expr.Assign expr = new Expr.Assign(name(), expression());
+                    expr.depth = varint() - 1;
+                    int slot = varint();
+                    if (expr.depth >= 0) {
+                        expr.slot = slot >> 1;
+                        expr.cell = (slot & 1) != 0;
+                    } else {
+                        expr.capture = slot - 1;
+                    }
+                    return expr;
+                }
+                case LOGICAL:
+                    return new Expr.Logical(expression(), token(), expression());
+                case CALL: {
+                    Expr callee = expression();
+                    Token paren = token();
+                    int count = length();
+                    List<Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(expression());
+                    }
+                    return new Expr.Call(callee, paren, arguments);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown expression tag " + tag + ".");
+            }
+        }
+
+        private Token name() {
+            return token(TokenType.IDENTIFIER);
+        }
+
+        private Token token() {
+            return token(TOKEN_TYPES[buffer.get()]);
+        }
+
+        private Token token(TokenType type) {
+            int lexeme = varint();
+            int line = line();
+            // each string is only in the file once, so its index numbers the name
+            int symbol = type == TokenType.IDENTIFIER ? lexeme : -1;
+            return Token.of(type, strings[lexeme], line, symbol);
+        }
+
+        private int line() {
+            int delta = varint();
+            line += (delta >>> 1) ^ -(delta & 1);
+            return line;
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Varint longer than 5 bytes.");
+        }
+
+        // A count of things still to be read, each of which takes at least a
+        // byte, so a damaged one can't make us allocate more than the file holds.
+        private int length() {
+            int length = varint();
+            if (length < 0 || length > buffer.remaining())
+                throw new IllegalArgumentException("Bad length " + length + ".");
+            return length;
+        }
+    }
+}
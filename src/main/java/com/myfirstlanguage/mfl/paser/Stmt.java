@@ -5,8 +5,10 @@ import java.util.List;
 import java.util.function.Function;
 
 import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.lexer.TokenType;
 
 public abstract class Stmt {
+    public int line; // the line it starts on, filled in by the parser
     public interface StmtVisitor<R> {
         R visit(Expression stmt);
 
@@ -28,8 +30,11 @@ public abstract class Stmt {
     public abstract <R> R accept(StmtVisitor<R> visitor);
 
     public static class Return extends Stmt {
-                final Token keyword;
+        public final Token keyword;
         public final Expr value;
+        // filled in by the resolver: value is a call whose result is returned as is
+        public boolean tailCall;
+
         Return(Token keyword, Expr value) {
             this.keyword = keyword;
             this.value = value;
@@ -41,15 +46,49 @@ public abstract class Stmt {
         }
     }
 
+    /*
+     * A variable from outside a function that the function uses. Either a
+     * local of the function around it, found depth frames up from where the
+     * function is declared, or when depth is -1, that function's own capture
+     * number slot.
+     */
+    public static final class Capture {
+        public final Token name;
+        public final int depth;
+        public final int slot;
+
+        public Capture(Token name, int depth, int slot) {
+            this.name = name;
+            this.depth = depth;
+            this.slot = slot;
+        }
+    }
+
     public static class Function extends Stmt {
         public final Token name;
         public final List<Token> params;
-        public final List<Stmt> body;
+        // null until a lazy body has been parsed, and set after everything below
+        public volatile List<Stmt> body;
+        public final LazyBody lazyBody; // null unless the parser skipped the body
+        // filled in by the resolver
+        public int slot = -1; // where the name lives, -1 means global
+        public int slots; // size of the frame for params and body
+        public boolean cell; // the name is captured, by the function itself or a sibling
+        public int[] cellParams = {}; // slots of params that inner functions capture
+        public List<Capture> captures = List.of(); // what a closure of it copies, in order
 
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
             this.params = params;
             this.body = body;
+            this.lazyBody = null;
+        }
+
+        Function(Token name, List<Token> params, LazyBody lazyBody) {
+            this.name = name;
+            this.params = params;
+            this.body = null;
+            this.lazyBody = lazyBody;
         }
 
         @Override
@@ -58,13 +97,57 @@ public abstract class Stmt {
         }
     }
 
+    /*
+     * What the resolver found out about a loop like
+     * for (var i = 0; i < n; i = i + 1): the condition compares a local with
+     * <, <=, > or >= against a limit that can't change while the loop runs,
+     * the increment adds a constant to the local, and nothing else assigns
+     * to it. Such a loop can count with a double, and only has to store it
+     * in the local's slot when the body reads it. Whether the local and the
+     * limit hold numbers is only known once the loop starts.
+     */
+    public static final class Counter {
+        public final int slot;
+        public final TokenType comparison;
+        public final Expr limit;
+        public final double step;
+        public final boolean read; // the body uses the local
+
+        public Counter(While loop, boolean read) {
+            Expr.Binary condition = (Expr.Binary) loop.condition;
+            Expr.Binary next = (Expr.Binary) ((Expr.Assign) loop.increment).value;
+            double by = (Double) ((Expr.Literal) next.right).value;
+            this.slot = ((Expr.Variable) condition.left).slot;
+            this.comparison = condition.operator.type;
+            this.limit = condition.right;
+            this.step = next.operator.type == TokenType.MINUS ? -by : by;
+            this.read = read;
+        }
+
+        public boolean inRange(double value, double limit) {
+            switch (comparison) {
+                case LESS:
+                    return value < limit;
+                case LESS_EQUAL:
+                    return value <= limit;
+                case GREATER:
+                    return value > limit;
+                default:
+                    return value >= limit;
+            }
+        }
+    }
+
     public static class While extends Stmt {
-        public final Expr condition;
+        public final Expr condition; // null when the loop never stops by itself
         public final Stmt body;
+        public final Expr increment; // a for loop's, run after the body each time round
+        public Counter counter; // filled in by the resolver when it's a counted loop
 
-        While(Expr condition, Stmt body) {
+        While(Expr condition, Stmt body, Expr increment) {
             this.condition = condition;
             this.body = body;
+            this.increment = increment;
         }
 
         @Override
@@ -93,6 +176,7 @@ public abstract class Stmt {
 
     public static class Block extends Stmt {
         public final List<Stmt> statements;
+        public int slots; // filled in by the resolver, 0 means it runs in the enclosing frame
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -133,6 +217,8 @@ public abstract class Stmt {
     public static class Var extends Stmt {
         public final Token name;
         public final Expr initializer;
+        public int slot = -1; // filled in by the resolver, -1 means global
+        public boolean cell; // an inner function captures it, so it lives in a Cell
 
         Var(Token name, Expr initializer) {
             this.name = name;
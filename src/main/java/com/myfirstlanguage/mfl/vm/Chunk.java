@@ -0,0 +1,51 @@
+package com.myfirstlanguage.mfl.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A run of bytecode with its constant pool and a line number for every byte.
+final class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+
+    private final List<Object> constantList = new ArrayList<>();
+    // numbers and strings are shared, functions are always added
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    Object[] constants = new Object[0];
+
+    void write(byte b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = b;
+        lines[count] = line;
+        count++;
+    }
+
+    // Returns the index of value in the constant pool, adding it if needed.
+    int addConstant(Object value) {
+        boolean shareable = value instanceof Double || value instanceof String;
+        if (shareable) {
+            Integer index = constantIndex.get(value);
+            if (index != null)
+                return index;
+        }
+        constantList.add(value);
+        int index = constantList.size() - 1;
+        if (shareable)
+            constantIndex.put(value, index);
+        return index;
+    }
+
+    // Trims the code to size and freezes the constant pool for the VM.
+    void finish() {
+        code = Arrays.copyOf(code, count);
+        lines = Arrays.copyOf(lines, count);
+        constants = constantList.toArray();
+    }
+}
@@ -0,0 +1,509 @@
+package com.myfirstlanguage.mfl.vm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.myfirstlanguage.mfl.lexer.Token;
+import com.myfirstlanguage.mfl.paser.Expr;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * Turns the AST into bytecode. Locals live on the VM stack, so the compiler
+ * tracks which slot every local is in, the same way the resolver does for the
+ * tree-walker. A function reaches the locals of the functions around it
+ * through the cells of its closure, which the resolver has worked out.
+ */
+class Compiler implements Expr.ExprVisitor<Void>, Stmt.StmtVisitor<Void> {
+
+    private static class Local {
+        final String name;
+        final int depth;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class FunctionState {
+        final VmFunction function;
+        final List<Local> locals = new ArrayList<>();
+        int scopeDepth = 0;
+        int stackDepth = 0;
+
+        FunctionState(VmFunction function) {
+            this.function = function;
+            // slot 0 holds the function being called
+            locals.add(new Local("", 0));
+            stackDepth = 1;
+            function.maxStack = 1;
+        }
+    }
+
+    private final VM vm;
+    private FunctionState current;
+    private int line = 1;
+    boolean hadError = false;
+
+    Compiler(VM vm) {
+        this.vm = vm;
+    }
+
+    VmFunction compile(List<Stmt> statements) {
+        current = new FunctionState(new VmFunction(null, 0));
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emit(OpCode.NIL, 1);
+        emit(OpCode.RETURN, -1);
+        current.function.chunk.finish();
+        return current.function;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    /* EMITTING */
+
+    private Chunk chunk() {
+        return current.function.chunk;
+    }
+
+    // stackEffect is how much the instruction grows the operand stack
+    private void emit(byte op, int stackEffect) {
+        chunk().write(op, line);
+        current.stackDepth += stackEffect;
+        if (current.stackDepth > current.function.maxStack) {
+            current.function.maxStack = current.stackDepth;
+        }
+    }
+
+    private void emitByte(int operand) {
+        chunk().write((byte) operand, line);
+    }
+
+    private void emitShort(int operand) {
+        chunk().write((byte) (operand >> 8), line);
+        chunk().write((byte) operand, line);
+    }
+
+    private void emitConstant(Object value) {
+        emit(OpCode.CONSTANT, 1);
+        emitShort(constant(value));
+    }
+
+    private int constant(Object value) {
+        int index = chunk().addConstant(value);
+        if (index > 0xffff) {
+            error("Too many constants in one chunk.");
+        }
+        return index;
+    }
+
+    // Returns where the jump offset goes so it can be patched later.
+    private int emitJump(byte op, int stackEffect) {
+        emit(op, stackEffect);
+        emitShort(0xffff);
+        return chunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = chunk().count - offset - 2;
+        if (jump > 0xffff) {
+            error("Too much code to jump over.");
+        }
+        chunk().code[offset] = (byte) (jump >> 8);
+        chunk().code[offset + 1] = (byte) jump;
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP, 0);
+        int offset = chunk().count - loopStart + 2;
+        if (offset > 0xffff) {
+            error("Loop body too large.");
+        }
+        emitShort(offset);
+    }
+
+    private void error(String message) {
+        hadError = true;
+        vm.reporter.error(line, message);
+    }
+
+    /* SCOPES */
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+
+        int popped = 0;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            locals.remove(locals.size() - 1);
+            popped++;
+        }
+        while (popped > 0) {
+            int count = Math.min(popped, 0xff);
+            if (count == 1) {
+                emit(OpCode.POP, -1);
+            } else {
+                emit(OpCode.POPN, -count);
+                emitByte(count);
+            }
+            popped -= count;
+        }
+    }
+
+    private int resolveLocal(Token name) {
+        List<Local> locals = current.locals;
+        for (int i = locals.size() - 1; i > 0; i--) {
+            if (locals.get(i).name.equals(name.lexeme)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The value for the new variable is on top of the stack.
+    private void defineVariable(Token name) {
+        if (current.scopeDepth == 0) {
+            emit(OpCode.DEFINE_GLOBAL, -1);
+            emitShort(vm.globalIndex(name.lexeme));
+            return;
+        }
+
+        // Declaring a name twice in one scope reuses its slot.
+        List<Local> locals = current.locals;
+        for (int i = locals.size() - 1; i > 0; i--) {
+            Local local = locals.get(i);
+            if (local.depth < current.scopeDepth)
+                break;
+            if (local.name.equals(name.lexeme)) {
+                emit(OpCode.SET_LOCAL, 0);
+                emitShort(i);
+                emit(OpCode.POP, -1);
+                return;
+            }
+        }
+
+        if (locals.size() > 0xffff) {
+            error("Too many local variables in function.");
+        }
+        locals.add(new Local(name.lexeme, current.scopeDepth));
+    }
+
+    /* STATEMENT HANDLING */
+
+    @Override
+    public Void visit(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT, -1);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL, 1);
+        }
+        line = stmt.name.line;
+        if (stmt.cell) {
+            emit(OpCode.BOX, 0);
+        }
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.If stmt) {
+        compile(stmt.condition);
+        int elseJump = emitJump(OpCode.POP_JUMP_IF_FALSE, -1);
+        compile(stmt.thenBranch);
+
+        if (stmt.elseBranch == null) {
+            patchJump(elseJump);
+            return null;
+        }
+
+        int endJump = emitJump(OpCode.JUMP, 0);
+        patchJump(elseJump);
+        compile(stmt.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.While stmt) {
+        int loopStart = chunk().count;
+        if (stmt.condition == null) {
+            compile(stmt.body);
+            increment(stmt);
+            emitLoop(loopStart);
+            return null;
+        }
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.POP_JUMP_IF_FALSE, -1);
+        compile(stmt.body);
+        increment(stmt);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    private void increment(Stmt.While stmt) {
+        if (stmt.increment != null) {
+            compile(stmt.increment);
+            emit(OpCode.POP, -1);
+        }
+    }
+
+    @Override
+    public Void visit(Stmt.Function stmt) {
+        line = stmt.name.line;
+        FunctionState enclosing = current;
+        current = new FunctionState(new VmFunction(stmt.name.lexeme, stmt.params.size()));
+
+        beginScope();
+        for (Token param : stmt.params) {
+            current.locals.add(new Local(param.lexeme, current.scopeDepth));
+            current.stackDepth++;
+        }
+        if (current.stackDepth > current.function.maxStack) {
+            current.function.maxStack = current.stackDepth;
+        }
+        // slot 0 is the function, so params start at 1
+        for (int slot : stmt.cellParams) {
+            emit(OpCode.GET_LOCAL, 1);
+            emitShort(slot + 1);
+            emit(OpCode.BOX, 0);
+            emit(OpCode.SET_LOCAL, 0);
+            emitShort(slot + 1);
+            emit(OpCode.POP, -1);
+        }
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emit(OpCode.NIL, 1);
+        emit(OpCode.RETURN, -1);
+
+        VmFunction function = current.function;
+        function.chunk.finish();
+        current = enclosing;
+
+        line = stmt.name.line;
+        if (stmt.captures.isEmpty()) {
+            emitConstant(function);
+            if (stmt.cell) {
+                emit(OpCode.BOX, 0);
+            }
+            defineVariable(stmt.name);
+            return null;
+        }
+
+        // a function that can see itself needs its cell before it's closed over
+        if (stmt.cell) {
+            emit(OpCode.NIL, 1);
+            emit(OpCode.BOX, 0);
+            defineVariable(stmt.name);
+        }
+        function.captureSources = new int[stmt.captures.size()];
+        for (int i = 0; i < function.captureSources.length; i++) {
+            Stmt.Capture variable = stmt.captures.get(i);
+            function.captureSources[i] = variable.depth < 0
+                    ? -1 - variable.slot
+                    : resolveLocal(variable.name);
+        }
+        emit(OpCode.CLOSURE, 1);
+        emitShort(constant(function));
+        if (stmt.cell) {
+            emit(OpCode.SET_CELL, 0);
+            emitShort(resolveLocal(stmt.name));
+            emit(OpCode.POP, -1);
+        } else {
+            defineVariable(stmt.name);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.tailCall) {
+            call((Expr.Call) stmt.value, OpCode.TAIL_CALL);
+        } else if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(OpCode.NIL, 1);
+        }
+        line = stmt.keyword.line;
+        emit(OpCode.RETURN, -1);
+        return null;
+    }
+
+    /* EXPRESSION HANDLING */
+
+    @Override
+    public Void visit(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL, 1);
+        } else if (expr.value == Boolean.TRUE) {
+            emit(OpCode.TRUE, 1);
+        } else if (expr.value == Boolean.FALSE) {
+            emit(OpCode.FALSE, 1);
+        } else {
+            emitConstant(expr.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Variable expr) {
+        line = expr.name.line;
+        int slot = resolveLocal(expr.name);
+        if (expr.capture >= 0) {
+            emit(OpCode.GET_CAPTURE, 1);
+            emitShort(expr.capture);
+        } else if (slot >= 0) {
+            emit(expr.cell ? OpCode.GET_CELL : OpCode.GET_LOCAL, 1);
+            emitShort(slot);
+        } else {
+            emit(OpCode.GET_GLOBAL, 1);
+            emitShort(vm.globalIndex(expr.name.lexeme));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        int slot = resolveLocal(expr.name);
+        if (expr.capture >= 0) {
+            emit(OpCode.SET_CAPTURE, 0);
+            emitShort(expr.capture);
+        } else if (slot >= 0) {
+            emit(expr.cell ? OpCode.SET_CELL : OpCode.SET_LOCAL, 0);
+            emitShort(slot);
+        } else {
+            emit(OpCode.SET_GLOBAL, 0);
+            emitShort(vm.globalIndex(expr.name.lexeme));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Unary expr) {
+        compile(expr.expression);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case NOT:
+                emit(OpCode.NOT, 0);
+                break;
+            case MINUS:
+                emit(OpCode.NEGATE, 0);
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case NOT_EQUAL: emit(OpCode.NOT_EQUAL, -1); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL, -1); break;
+            case GREATER: emit(OpCode.GREATER, -1); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL, -1); break;
+            case LESS: emit(OpCode.LESS, -1); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL, -1); break;
+            case MINUS: emit(OpCode.SUBTRACT, -1); break;
+            case PLUS: emit(OpCode.ADD, -1); break;
+            case SLASH: emit(OpCode.DIVIDE, -1); break;
+            case STAR: emit(OpCode.MULTIPLY, -1); break;
+            default: break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Logical expr) {
+        compile(expr.left);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case AND: {
+                int endJump = emitJump(OpCode.JUMP_IF_FALSE, 0);
+                emit(OpCode.POP, -1);
+                compile(expr.right);
+                patchJump(endJump);
+                break;
+            }
+            default: {
+                int elseJump = emitJump(OpCode.JUMP_IF_FALSE, 0);
+                int endJump = emitJump(OpCode.JUMP, 0);
+                patchJump(elseJump);
+                emit(OpCode.POP, -1);
+                compile(expr.right);
+                patchJump(endJump);
+                break;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Expr.Call expr) {
+        call(expr, OpCode.CALL);
+        return null;
+    }
+
+    private void call(Expr.Call expr, byte op) {
+        compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        line = expr.paren.line;
+        if (expr.arguments.size() > 0xff) {
+            error("Can't have more than 255 arguments.");
+        }
+        emit(op, -expr.arguments.size());
+        emitByte(expr.arguments.size());
+    }
+}
@@ -0,0 +1,17 @@
+package com.myfirstlanguage.mfl.vm;
+
+abstract class NativeFunction {
+    final int arity;
+
+    NativeFunction(int arity) {
+        this.arity = arity;
+    }
+
+    // args[offset] .. args[offset + arity - 1] are the arguments
+    abstract Object call(Object[] args, int offset);
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
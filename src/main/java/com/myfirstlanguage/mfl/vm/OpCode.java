@@ -0,0 +1,55 @@
+package com.myfirstlanguage.mfl.vm;
+
+/*
+ * One byte per instruction. Operands follow the opcode in the code array:
+ * u8 means one byte, u16 means two bytes, high byte first.
+ */
+final class OpCode {
+    private OpCode() {
+    }
+
+    static final byte CONSTANT = 0; // u16 constant index
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    static final byte POPN = 5; // u8 count
+
+    static final byte GET_LOCAL = 6; // u16 slot
+    static final byte SET_LOCAL = 7; // u16 slot
+    static final byte GET_GLOBAL = 8; // u16 global index
+    static final byte SET_GLOBAL = 9; // u16 global index
+    static final byte DEFINE_GLOBAL = 10; // u16 global index
+
+    static final byte EQUAL = 11;
+    static final byte NOT_EQUAL = 12;
+    static final byte GREATER = 13;
+    static final byte GREATER_EQUAL = 14;
+    static final byte LESS = 15;
+    static final byte LESS_EQUAL = 16;
+    static final byte ADD = 17;
+    static final byte SUBTRACT = 18;
+    static final byte MULTIPLY = 19;
+    static final byte DIVIDE = 20;
+    static final byte NOT = 21;
+    static final byte NEGATE = 22;
+
+    static final byte PRINT = 23;
+    static final byte JUMP = 24; // u16 forward offset
+    static final byte JUMP_IF_FALSE = 25; // u16 forward offset, leaves the condition
+    static final byte POP_JUMP_IF_FALSE = 26; // u16 forward offset, pops the condition
+    static final byte LOOP = 27; // u16 backward offset
+    static final byte CALL = 28; // u8 argument count
+    static final byte RETURN = 29;
+    // u8 argument count. Calls an MFL function in place of the current one,
+    // anything else is called as usual and left for the RETURN after it.
+    static final byte TAIL_CALL = 30;
+
+    // Locals that closures capture hold a Cell, see Resolver.
+    static final byte BOX = 31; // puts the value on top of the stack in a new cell
+    static final byte GET_CELL = 32; // u16 slot of a local holding a cell
+    static final byte SET_CELL = 33; // u16 slot of a local holding a cell
+    static final byte GET_CAPTURE = 34; // u16 index into the running closure's cells
+    static final byte SET_CAPTURE = 35; // u16 index into the running closure's cells
+    static final byte CLOSURE = 36; // u16 constant index of the function to close over
+}
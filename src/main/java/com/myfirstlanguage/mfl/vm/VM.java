@@ -0,0 +1,431 @@
+package com.myfirstlanguage.mfl.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.Cell;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.Rope;
+import com.myfirstlanguage.mfl.interpreter.RuntimeError;
+import com.myfirstlanguage.mfl.interpreter.Values;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * A stack based virtual machine. Every call gets a frame whose locals sit on
+ * the shared value stack starting at the frame's base, with the called
+ * function itself in slot 0.
+ */
+public class VM {
+    private static final int MAX_FRAMES = 1 << 16;
+    // marks a global that has been compiled against but never defined
+    private static final Object UNDEFINED = new Object();
+
+    private final Map<String, Integer> globalIndex = new HashMap<>();
+    private String[] globalNames = new String[64];
+    private Object[] globals = new Object[64];
+
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+
+    private VmFunction[] frameFunctions = new VmFunction[64];
+    private int[] frameIps = new int[64];
+    private int[] frameBases = new int[64];
+    private int frameCount = 0;
+
+    private OutputSink output = OutputSink.of(System.out);
+    final ErrorReporter reporter;
+
+    public VM(ErrorReporter reporter) {
+        this.reporter = reporter;
+        Arrays.fill(globals, UNDEFINED);
+        defineNative("clock", new NativeFunction(0) {
+            @Override
+            Object call(Object[] args, int offset) {
+                return (double) System.currentTimeMillis() / 1000.0;
+            }
+        });
+    }
+
+    public void setOutput(OutputSink output) {
+        this.output = output;
+    }
+
+    public void interpret(List<Stmt> statements) {
+        Compiler compiler = new Compiler(this);
+        VmFunction script = compiler.compile(statements);
+        if (compiler.hadError)
+            return;
+
+        try {
+            run(script);
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        } finally {
+            Arrays.fill(stack, 0, stack.length, null);
+            sp = 0;
+            frameCount = 0;
+        }
+    }
+
+    private void defineNative(String name, NativeFunction function) {
+        globals[globalIndex(name)] = function;
+    }
+
+    // Globals are looked up by index at runtime, the name is only needed here.
+    int globalIndex(String name) {
+        Integer index = globalIndex.get(name);
+        if (index != null)
+            return index;
+
+        index = globalIndex.size();
+        if (index == globals.length) {
+            int oldLength = globals.length;
+            globals = Arrays.copyOf(globals, oldLength * 2);
+            globalNames = Arrays.copyOf(globalNames, oldLength * 2);
+            Arrays.fill(globals, oldLength, globals.length, UNDEFINED);
+        }
+        globalNames[index] = name;
+        globalIndex.put(name, index);
+        return index;
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+
+    private void pushFrame(VmFunction function, int base, int line) {
+        if (frameCount == frameFunctions.length) {
+            if (frameCount == MAX_FRAMES) {
+                throw new RuntimeError(line, "Stack overflow.");
+            }
+            frameFunctions = Arrays.copyOf(frameFunctions, frameCount * 2);
+            frameIps = Arrays.copyOf(frameIps, frameCount * 2);
+            frameBases = Arrays.copyOf(frameBases, frameCount * 2);
+        }
+        ensureStack(base + function.maxStack);
+        frameFunctions[frameCount] = function;
+        frameBases[frameCount] = base;
+        frameIps[frameCount] = 0;
+        frameCount++;
+    }
+
+    private void run(VmFunction script) {
+        ensureStack(script.maxStack);
+        stack[0] = script;
+        sp = 1;
+        pushFrame(script, 0, 0);
+
+        Object[] globals = this.globals;
+        Object[] stack = this.stack;
+        VmFunction function = script;
+        byte[] code = function.chunk.code;
+        Object[] constants = function.chunk.constants;
+        int ip = 0;
+        int base = 0;
+        int sp = this.sp;
+
+        try {
+            for (;;) {
+                switch (code[ip++]) {
+                    case OpCode.CONSTANT:
+                        stack[sp++] = constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        break;
+                    case OpCode.NIL:
+                        stack[sp++] = null;
+                        break;
+                    case OpCode.TRUE:
+                        stack[sp++] = Boolean.TRUE;
+                        break;
+                    case OpCode.FALSE:
+                        stack[sp++] = Boolean.FALSE;
+                        break;
+                    case OpCode.POP:
+                        sp--;
+                        break;
+                    case OpCode.POPN:
+                        sp -= code[ip++] & 0xff;
+                        break;
+
+                    case OpCode.GET_LOCAL:
+                        stack[sp++] = stack[base + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff))];
+                        ip += 2;
+                        break;
+                    case OpCode.SET_LOCAL:
+                        stack[base + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff))] = stack[sp - 1];
+                        ip += 2;
+                        break;
+                    case OpCode.GET_GLOBAL: {
+                        int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        Object value = globals[index];
+                        if (value == UNDEFINED) {
+                            throw error(function, ip, "Undefined variable '" + globalNames[index] + "'.");
+                        }
+                        stack[sp++] = value;
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                        ip += 2;
+                        if (globals[index] == UNDEFINED) {
+                            throw error(function, ip, "Undefined variable '" + globalNames[index] + "'.");
+                        }
+                        globals[index] = stack[sp - 1];
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL:
+                        globals[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)] = stack[--sp];
+                        ip += 2;
+                        break;
+
+                    case OpCode.BOX:
+                        stack[sp - 1] = new Cell(stack[sp - 1]);
+                        break;
+                    case OpCode.GET_CELL:
+                        stack[sp++] = ((Cell) stack[base + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff))]).value;
+                        ip += 2;
+                        break;
+                    case OpCode.SET_CELL:
+                        ((Cell) stack[base + (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff))]).value = stack[sp - 1];
+                        ip += 2;
+                        break;
+                    case OpCode.GET_CAPTURE:
+                        stack[sp++] = function.captures[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)].value;
+                        ip += 2;
+                        break;
+                    case OpCode.SET_CAPTURE:
+                        function.captures[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)].value = stack[sp - 1];
+                        ip += 2;
+                        break;
+                    case OpCode.CLOSURE: {
+                        VmFunction prototype = (VmFunction) constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                        ip += 2;
+                        int[] sources = prototype.captureSources;
+                        Cell[] cells = new Cell[sources.length];
+                        for (int i = 0; i < cells.length; i++) {
+                            int source = sources[i];
+                            cells[i] = source >= 0 ? (Cell) stack[base + source] : function.captures[-1 - source];
+                        }
+                        stack[sp++] = new VmFunction(prototype, cells);
+                        break;
+                    }
+
+                    case OpCode.EQUAL: {
+                        Object b = stack[--sp];
+                        stack[sp - 1] = Values.isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL: {
+                        Object b = stack[--sp];
+                        stack[sp - 1] = !Values.isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.GREATER: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double && b instanceof Double))
+                            throw error(function, ip, "Operands must be numbers.");
+                        stack[sp - 1] = (double) a > (double) b;
+                        break;
+                    }
+                    case OpCode.GREATER_EQUAL: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double && b instanceof Double))
+                            throw error(function, ip, "Operands must be numbers.");
+                        stack[sp - 1] = (double) a >= (double) b;
+                        break;
+                    }
+                    case OpCode.LESS: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double && b instanceof Double))
+                            throw error(function, ip, "Operands must be numbers.");
+                        stack[sp - 1] = (double) a < (double) b;
+                        break;
+                    }
+                    case OpCode.LESS_EQUAL: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double && b instanceof Double))
+                            throw error(function, ip, "Operands must be numbers.");
+                        stack[sp - 1] = (double) a <= (double) b;
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (a instanceof Double && b instanceof Double) {
+                            stack[sp - 1] = (double) a + (double) b;
+                        } else if (a instanceof CharSequence && b instanceof CharSequence) {
+                            stack[sp - 1] = Rope.concat((CharSequence) a, (CharSequence) b);
+                        } else {
+                            throw error(function, ip, "Operands must be two numbers or two strings.");
+                        }
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double && b instanceof Double))
+                            throw error(function, ip, "Operands must be numbers.");
+                        stack[sp - 1] = (double) a - (double) b;
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double && b instanceof Double))
+                            throw error(function, ip, "Operands must be numbers.");
+                        stack[sp - 1] = (double) a * (double) b;
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double && b instanceof Double))
+                            throw error(function, ip, "Operands must be numbers.");
+                        stack[sp - 1] = (double) a / (double) b;
+                        break;
+                    }
+                    case OpCode.NOT:
+                        stack[sp - 1] = !Values.isTruthy(stack[sp - 1]);
+                        break;
+                    case OpCode.NEGATE: {
+                        Object a = stack[sp - 1];
+                        if (!(a instanceof Double))
+                            throw error(function, ip, "Operand must be a number.");
+                        stack[sp - 1] = -(double) a;
+                        break;
+                    }
+
+                    case OpCode.PRINT:
+                        output.println(Values.stringify(stack[--sp]));
+                        break;
+                    case OpCode.JUMP:
+                        ip += (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) + 2;
+                        break;
+                    case OpCode.JUMP_IF_FALSE:
+                        if (Values.isTruthy(stack[sp - 1])) {
+                            ip += 2;
+                        } else {
+                            ip += (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) + 2;
+                        }
+                        break;
+                    case OpCode.POP_JUMP_IF_FALSE:
+                        if (Values.isTruthy(stack[--sp])) {
+                            ip += 2;
+                        } else {
+                            ip += (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) + 2;
+                        }
+                        break;
+                    case OpCode.LOOP:
+                        ip -= (((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)) - 2;
+                        break;
+
+                    case OpCode.TAIL_CALL: {
+                        int argCount = code[ip] & 0xff;
+                        Object callee = stack[sp - argCount - 1];
+                        if (callee instanceof VmFunction) {
+                            VmFunction called = (VmFunction) callee;
+                            if (called.arity != argCount) {
+                                throw error(function, ip, "Expected " + called.arity
+                                        + " arguments but got " + argCount + ".");
+                            }
+                            // the callee and its arguments take over the current frame
+                            System.arraycopy(stack, sp - argCount - 1, stack, base, argCount + 1);
+                            sp = base + argCount + 1;
+                            frameFunctions[frameCount - 1] = called;
+                            ensureStack(base + called.maxStack);
+                            stack = this.stack;
+                            function = called;
+                            code = called.chunk.code;
+                            constants = called.chunk.constants;
+                            ip = 0;
+                            break;
+                        }
+                        // Anything else is an ordinary call, and the RETURN
+                        // after it does the rest. It can't push a frame.
+                        sp = call(sp, argCount, function, ++ip);
+                        break;
+                    }
+                    case OpCode.CALL: {
+                        int argCount = code[ip++] & 0xff;
+                        sp = call(sp, argCount, function, ip);
+                        // the called function's frame, or still this one after a native call
+                        stack = this.stack;
+                        function = frameFunctions[frameCount - 1];
+                        code = function.chunk.code;
+                        constants = function.chunk.constants;
+                        ip = frameIps[frameCount - 1];
+                        base = frameBases[frameCount - 1];
+                        break;
+                    }
+                    case OpCode.RETURN: {
+                        Object result = stack[sp - 1];
+                        frameCount--;
+                        if (frameCount == 0) {
+                            return;
+                        }
+                        sp = base;
+                        stack[sp++] = result;
+
+                        function = frameFunctions[frameCount - 1];
+                        code = function.chunk.code;
+                        constants = function.chunk.constants;
+                        ip = frameIps[frameCount - 1];
+                        base = frameBases[frameCount - 1];
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+                }
+            }
+        } finally {
+            this.sp = sp;
+        }
+    }
+
+    /*
+     * Calls what is under the arguments on top of the stack. A function gets a
+     * new frame that run carries on in, a native function is called straight
+     * away. Returns the new sp.
+     */
+    private int call(int sp, int argCount, VmFunction function, int ip) {
+        Object[] stack = this.stack;
+        Object callee = stack[sp - argCount - 1];
+        frameIps[frameCount - 1] = ip;
+        if (callee instanceof VmFunction) {
+            VmFunction called = (VmFunction) callee;
+            if (called.arity != argCount) {
+                throw error(function, ip, "Expected " + called.arity
+                        + " arguments but got " + argCount + ".");
+            }
+            pushFrame(called, sp - argCount - 1, function.chunk.lines[ip - 1]);
+            return sp;
+        }
+        if (callee instanceof NativeFunction) {
+            NativeFunction called = (NativeFunction) callee;
+            if (called.arity != argCount) {
+                throw error(function, ip, "Expected " + called.arity
+                        + " arguments but got " + argCount + ".");
+            }
+            for (int i = sp - argCount; i < sp; i++) {
+                stack[i] = Values.flatten(stack[i]);
+            }
+            stack[sp - argCount - 1] = called.call(stack, sp - argCount);
+            return sp - argCount;
+        }
+        throw error(function, ip, "Can only call functions and classes.");
+    }
+
+    private RuntimeError error(VmFunction function, int ip, String message) {
+        return new RuntimeError(function.chunk.lines[ip - 1], message);
+    }
+}
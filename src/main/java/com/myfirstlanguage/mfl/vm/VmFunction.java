@@ -0,0 +1,39 @@
+package com.myfirstlanguage.mfl.vm;
+
+import com.myfirstlanguage.mfl.interpreter.Cell;
+
+final class VmFunction {
+    final String name; // null for the top-level script
+    final int arity;
+    final Chunk chunk;
+    int maxStack; // deepest the operand stack gets, locals included
+
+    // Where CLOSURE finds each cell: a local slot of the function running it,
+    // or -1 - i for that function's own capture i.
+    int[] captureSources;
+    // set on the copies CLOSURE makes, null for functions that capture nothing
+    final Cell[] captures;
+
+    VmFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+        this.chunk = new Chunk();
+        this.captures = null;
+    }
+
+    // A closure, sharing the compiled code of the function it was made from.
+    VmFunction(VmFunction function, Cell[] captures) {
+        this.name = function.name;
+        this.arity = function.arity;
+        this.chunk = function.chunk;
+        this.maxStack = function.maxStack;
+        this.captures = captures;
+    }
+
+    @Override
+    public String toString() {
+        if (name == null)
+            return "<script>";
+        return "<fn " + name + ">";
+    }
+}
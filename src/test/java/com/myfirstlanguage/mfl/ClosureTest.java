@@ -0,0 +1,104 @@
+package com.myfirstlanguage.mfl;
+
+import static com.myfirstlanguage.mfl.Scripts.assertPrints;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ClosureTest {
+
+    // Every iteration gets its own j, even though the loop body's frame is reused.
+    @Test
+    public void closuresDeclaredInLoopBodies() throws IOException {
+        String loop = String.join("\n",
+                "var first; var second; var third;",
+                "for (var i = 0; i < 3; i = i + 1) {",
+                "  var j = i * 10;",
+                "  fun get() { return j; }",
+                "  if (i == 0) first = get;",
+                "  if (i == 1) second = get;",
+                "  if (i == 2) third = get;",
+                "}",
+                "print first(); print second(); print third();");
+        assertPrints(loop, "0", "10", "20");
+        // and again with locals instead of globals
+        assertPrints("fun f() {\n" + loop + "\n}\nf();", "0", "10", "20");
+
+        assertPrints(String.join("\n",
+                "fun f() {",
+                "  var sum = 0;",
+                "  var i = 0;",
+                "  while (i < 4) {",
+                "    var k = i;",
+                "    fun add() { sum = sum + k; }",
+                "    add();",
+                "    i = i + 1;",
+                "  }",
+                "  return sum;",
+                "}",
+                "print f();"),
+                "6");
+    }
+
+    // A for loop has one counter for the whole loop, so closures all see its last value.
+    @Test
+    public void capturedLoopVariables() throws IOException {
+        assertPrints(String.join("\n",
+                "fun f() {",
+                "  var get;",
+                "  for (var i = 0; i < 3; i = i + 1) {",
+                "    fun g() { return i; }",
+                "    if (i == 1) get = g;",
+                "  }",
+                "  return get;",
+                "}",
+                "print f()();"),
+                "3");
+
+        // a closure that moves the counter on
+        assertPrints(String.join("\n",
+                "var n = 0;",
+                "for (var i = 0; i < 10; i = i + 1) {",
+                "  fun skip() { i = i + 1; }",
+                "  skip();",
+                "  n = n + 1;",
+                "}",
+                "print n;"),
+                "5");
+    }
+
+    @Test
+    public void capturedParameters() throws IOException {
+        assertPrints(String.join("\n",
+                "fun adder(x) {",
+                "  fun add(y) { return x + y; }",
+                "  return add;",
+                "}",
+                "print adder(5)(3);",
+                "fun counter(n) {",
+                "  fun next() { n = n + 1; return n; }",
+                "  return next;",
+                "}",
+                "var c = counter(10);",
+                "var d = counter(0);",
+                "print c(); print c(); print d(); print c();"),
+                "8", "11", "12", "1", "13");
+    }
+
+    @Test
+    public void selfRecursiveLocalFunctions() throws IOException {
+        assertPrints(String.join("\n",
+                "fun outer(n) {",
+                "  fun fact(k) { if (k <= 1) return 1; return k * fact(k - 1); }",
+                "  return fact(n);",
+                "}",
+                "print outer(5);",
+                "fun countdown(step) {",
+                "  fun down(n) { if (n <= 0) return \"done\"; print n; return down(n - step); }",
+                "  return down;",
+                "}",
+                "print countdown(2)(5);"),
+                "120", "5", "3", "1", "done");
+    }
+}
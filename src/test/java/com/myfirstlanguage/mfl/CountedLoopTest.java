@@ -0,0 +1,126 @@
+package com.myfirstlanguage.mfl;
+
+import static com.myfirstlanguage.mfl.Scripts.assertPrints;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/*
+ * The ways a counted for loop has to give up its fast path. Each loop is
+ * checked against the same loop written as a plain while, which is never
+ * counted, on every engine.
+ */
+public class CountedLoopTest {
+
+    private static void assertLikeWhile(boolean counted, String forLoop, String whileLoop, String... lines)
+            throws IOException {
+        assertEquals(counted, hasCounter(forLoop));
+        assertFalse(hasCounter(whileLoop));
+        assertPrints(forLoop, lines);
+        assertPrints(whileLoop, lines);
+    }
+
+    // Whether the resolver marked the loop in the script's first function as counted.
+    private static boolean hasCounter(String source) {
+        ErrorReporter reporter = new ErrorReporter(OutputSink.of(new PrintStream(new ByteArrayOutputStream())), System.err);
+        List<Stmt> program = new MflEngine().compile(source, reporter);
+        return findLoop(((Stmt.Function) program.get(0)).body).counter != null;
+    }
+
+    private static Stmt.While findLoop(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            if (stmt instanceof Stmt.While)
+                return (Stmt.While) stmt;
+            if (stmt instanceof Stmt.Block) {
+                Stmt.While loop = findLoop(((Stmt.Block) stmt).statements);
+                if (loop != null)
+                    return loop;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void bodyAssignsTheCounter() throws IOException {
+        // never counted, the resolver sees the assignment
+        assertLikeWhile(false, String.join("\n",
+                "fun f() {",
+                "  var a;",
+                "  for (a = 0; a < 5; a = a + 1) {",
+                "    if (a == 1) a = 3;",
+                "    print a;",
+                "  }",
+                "  return a;",
+                "}",
+                "print f();"),
+                String.join("\n",
+                "fun f() {",
+                "  var a = 0;",
+                "  while (a < 5) {",
+                "    if (a == 1) a = 3;",
+                "    print a;",
+                "    a = a + 1;",
+                "  }",
+                "  return a;",
+                "}",
+                "print f();"),
+                "0", "3", "4", "5");
+    }
+
+    @Test
+    public void limitIsNotANumber() throws IOException {
+        // counted, until a limit turns out not to be a number when the loop starts
+        assertLikeWhile(true, String.join("\n",
+                "fun f(n) {",
+                "  var a = 0;",
+                "  for (; a < n; a = a + 1) print a;",
+                "  return a;",
+                "}",
+                "print f(3);",
+                "print f(\"3\");"),
+                String.join("\n",
+                "fun f(n) {",
+                "  var a = 0;",
+                "  while (a < n) { print a; a = a + 1; }",
+                "  return a;",
+                "}",
+                "print f(3);",
+                "print f(\"3\");"),
+                "0", "1", "2", "3", "Operands must be numbers.\n[line 3]");
+    }
+
+    @Test
+    public void bodyReturnsEarly() throws IOException {
+        assertLikeWhile(true, String.join("\n",
+                "fun f(n) {",
+                "  var a;",
+                "  for (a = 0; a < 10; a = a + 1) {",
+                "    if (a == n) return a * 100;",
+                "  }",
+                "  return a;",
+                "}",
+                "print f(4);",
+                "print f(20);"),
+                String.join("\n",
+                "fun f(n) {",
+                "  var a = 0;",
+                "  while (a < 10) {",
+                "    if (a == n) return a * 100;",
+                "    a = a + 1;",
+                "  }",
+                "  return a;",
+                "}",
+                "print f(4);",
+                "print f(20);"),
+                "400", "10");
+    }
+}
@@ -0,0 +1,98 @@
+package com.myfirstlanguage.mfl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+
+/*
+ * Expressions the parser copes with but that are too deep for the passes
+ * after it, deep enough to be too deep however much has been JIT compiled.
+ */
+public class DeepNestingTest {
+    private static final int DEEP = 200000;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final String ERROR = "Expression nested too deeply.";
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private MflContext context(MflEngine engine) {
+        out.reset();
+        err.reset();
+        return engine.newContext(OutputSink.of(new PrintStream(out, true)), new PrintStream(err, true));
+    }
+
+    // Reports the error instead of overflowing, and the context still works afterwards.
+    private void check(MflEngine engine, String source) {
+        MflContext context = context(engine);
+        context.eval(source);
+        assertTrue(engine.kind() + ": " + err, err.toString().contains(ERROR));
+        assertTrue(context.reporter().hadError());
+        assertEquals("", out.toString());
+
+        context.reporter().reset();
+        context.eval("print \"still running\";");
+        assertEquals("still running" + NEWLINE, out.toString());
+    }
+
+    private void checkAllEngines(String source) {
+        for (MflEngine.Kind kind : MflEngine.Kind.values()) {
+            check(new MflEngine(kind), source);
+        }
+        check(new MflEngine(MflEngine.Kind.TREE, null, true), source);
+    }
+
+    @Test
+    public void deepGrouping() {
+        checkAllEngines("print " + "(".repeat(DEEP) + "1" + ")".repeat(DEEP) + ";");
+    }
+
+    @Test
+    public void deepNegation() {
+        checkAllEngines("print " + "-".repeat(DEEP) + "1;");
+    }
+
+    @Test
+    public void deepOperandsOfAVariable() {
+        checkAllEngines("var a = 1;\nprint " + "(".repeat(DEEP) + "a" + ")".repeat(DEEP) + ";");
+        checkAllEngines("var a = 1;\nprint a" + " + a".repeat(DEEP) + ";");
+    }
+
+    // Found on the first call, like a syntax error in the body.
+    @Test
+    public void deepInALazyBody() {
+        MflContext context = context(new MflEngine(MflEngine.Kind.TREE, null, true));
+        context.eval("fun f() {\n  print " + "!".repeat(DEEP) + "true;\n}\nprint \"before\";\nf();");
+        assertEquals("before" + NEWLINE, out.toString());
+        assertTrue(err.toString(), err.toString().contains(ERROR));
+        assertTrue(context.reporter().hadRuntimeError());
+    }
+
+    @Test
+    public void deepWhileStreaming() throws IOException {
+        Path script = Files.createTempFile("deep", ".mfl");
+        try {
+            String source = "print \"before\";\nprint " + "-".repeat(DEEP) + "1;\nprint \"after\";\n";
+            Files.write(script, source.getBytes(StandardCharsets.UTF_8));
+            MflContext context = context(new MflEngine(MflEngine.Kind.TREE));
+            try (FileChannel channel = FileChannel.open(script)) {
+                context.stream(channel, false);
+            }
+            assertEquals("before" + NEWLINE, out.toString());
+            assertTrue(err.toString(), err.toString().contains(ERROR));
+        } finally {
+            Files.delete(script);
+        }
+    }
+}
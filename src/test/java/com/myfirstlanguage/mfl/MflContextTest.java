@@ -0,0 +1,40 @@
+package com.myfirstlanguage.mfl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.monitoring.MflMetrics;
+
+public class MflContextTest {
+    private static final String NEWLINE = System.lineSeparator();
+
+    @Test
+    public void streamedFileIsOneScript() throws IOException {
+        Path script = Files.createTempFile("stream", ".mfl");
+        try {
+            Files.write(script, "var a = 1;\nprint a;\nfun f() { return a + 1; }\nprint f();\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MflContext context = new MflEngine().newContext(OutputSink.of(new PrintStream(out, true)), System.err);
+
+            long scripts = MflMetrics.INSTANCE.getScriptsRun();
+            try (FileChannel channel = FileChannel.open(script)) {
+                context.stream(channel, false);
+            }
+            assertEquals("1" + NEWLINE + "2" + NEWLINE, out.toString());
+            assertEquals(scripts + 1, MflMetrics.INSTANCE.getScriptsRun());
+        } finally {
+            Files.delete(script);
+        }
+    }
+}
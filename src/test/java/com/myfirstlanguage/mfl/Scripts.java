@@ -0,0 +1,74 @@
+package com.myfirstlanguage.mfl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.paser.ProgramFile;
+
+/*
+ * Runs a script on every engine, lazily, and from its .mflc file, for tests
+ * that all of them have to agree on. Errors are written along with the
+ * output, in the order they happen.
+ */
+final class Scripts {
+    private Scripts() {
+    }
+
+    static String run(MflEngine engine, String source) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        MflContext context = engine.newContext(OutputSink.of(out), out);
+        context.eval(source);
+        context.output().flush();
+        return bytes.toString();
+    }
+
+    // Runs the script file twice, the second time from the .mflc the first run saved.
+    static String runFromProgramFile(MflEngine.Kind kind, String source) throws IOException {
+        Path directory = Files.createTempDirectory("scripts");
+        Path script = directory.resolve("script.mfl");
+        Path precompiled = ProgramFile.pathFor(script);
+        try {
+            Files.write(script, source.getBytes(StandardCharsets.UTF_8));
+            String compiled = runFile(new MflEngine(kind), script);
+            assertTrue(Files.exists(precompiled));
+            String loaded = runFile(new MflEngine(kind), script);
+            assertEquals(kind + " from .mflc", compiled, loaded);
+            return loaded;
+        } finally {
+            Files.deleteIfExists(precompiled);
+            Files.delete(script);
+            Files.delete(directory);
+        }
+    }
+
+    private static String runFile(MflEngine engine, Path script) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        MflContext context = engine.newContext(OutputSink.of(out), out);
+        context.eval(script);
+        context.output().flush();
+        return bytes.toString();
+    }
+
+    // Lines are given without their line separators.
+    static void assertPrints(String source, String... lines) throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (String line : lines) {
+            expected.append(line).append(System.lineSeparator());
+        }
+        for (MflEngine.Kind kind : MflEngine.Kind.values()) {
+            assertEquals(kind.toString(), expected.toString(), run(new MflEngine(kind), source));
+            assertEquals(kind + " from .mflc", expected.toString(), runFromProgramFile(kind, source));
+        }
+        assertEquals("lazy", expected.toString(), run(new MflEngine(MflEngine.Kind.TREE, null, true), source));
+    }
+}
@@ -0,0 +1,77 @@
+package com.myfirstlanguage.mfl;
+
+import static com.myfirstlanguage.mfl.Scripts.assertPrints;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.paser.Stmt;
+
+/* Tail calls go far deeper than the Java stack would let ordinary calls go, on every engine. */
+public class TailCallTest {
+
+    @Test
+    public void selfTailCalls() throws IOException {
+        assertPrints(String.join("\n",
+                "fun loop(n, acc) {",
+                "  if (n == 0) return acc;",
+                "  return loop(n - 1, acc + 1);",
+                "}",
+                "print loop(1000000, 0);"),
+                "1000000");
+    }
+
+    @Test
+    public void mutualTailCalls() throws IOException {
+        assertPrints(String.join("\n",
+                "fun isEven(n) {",
+                "  if (n == 0) return true;",
+                "  return isOdd(n - 1);",
+                "}",
+                "fun isOdd(n) {",
+                "  if (n == 0) return false;",
+                "  return isEven(n - 1);",
+                "}",
+                "print isEven(1000000);",
+                "print isOdd(300001);"),
+                "true", "true");
+    }
+
+    // The call has to come back for the addition, so it is an ordinary call.
+    @Test
+    public void callInsideAnExpressionIsNotATailCall() throws IOException {
+        String source = String.join("\n",
+                "fun f(n) {",
+                "  if (n == 0) return 0;",
+                "  return 1 + f(n - 1);",
+                "}",
+                "fun g(n) {",
+                "  if (n == 0) return 0;",
+                "  return (g(n - 1));",
+                "}",
+                "print f(100);",
+                "print g(100);");
+        assertPrints(source, "100", "0");
+
+        ErrorReporter reporter = new ErrorReporter(OutputSink.of(new PrintStream(new ByteArrayOutputStream())), System.err);
+        List<Stmt> program = new MflEngine().compile(source, reporter);
+        assertFalse(returnOf(program.get(0)).tailCall);
+        // the grouping is gone by the time tail calls are found
+        assertTrue(returnOf(program.get(1)).tailCall);
+    }
+
+    // The last statement of a function.
+    private static Stmt.Return returnOf(Stmt function) {
+        List<Stmt> body = ((Stmt.Function) function).body;
+        assertEquals(2, body.size());
+        return (Stmt.Return) body.get(1);
+    }
+}
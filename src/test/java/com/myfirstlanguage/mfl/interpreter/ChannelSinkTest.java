@@ -0,0 +1,58 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ChannelSinkTest {
+    private static final String NEWLINE = System.lineSeparator();
+
+    // ByteArrayOutputStream is synchronized, so it can be read while the sink's thread writes to it.
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private String written() {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void flushAfterWritesWithoutAnotherPrint() throws InterruptedException {
+        ChannelSink sink = ChannelSink.flushAfter(Channels.newChannel(out), 20);
+        sink.println("one");
+        sink.println("two");
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (out.size() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("one" + NEWLINE + "two" + NEWLINE, written());
+
+        // and again, for lines printed after that write
+        sink.println("three");
+        deadline = System.nanoTime() + 5_000_000_000L;
+        while (!written().endsWith("three" + NEWLINE) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("one" + NEWLINE + "two" + NEWLINE + "three" + NEWLINE, written());
+    }
+
+    @Test
+    public void flushEveryWaitsForEnoughBytes() {
+        ChannelSink sink = ChannelSink.flushEvery(Channels.newChannel(out), 8);
+        sink.println("abc");
+        assertEquals("", written());
+        sink.println("défg");
+        assertEquals("abc" + NEWLINE + "défg" + NEWLINE, written());
+    }
+
+    @Test
+    public void flushAtExitWaitsForFlush() {
+        ChannelSink sink = ChannelSink.flushAtExit(Channels.newChannel(out));
+        sink.println("abc");
+        assertEquals("", written());
+        sink.flush();
+        assertEquals("abc" + NEWLINE, written());
+    }
+}
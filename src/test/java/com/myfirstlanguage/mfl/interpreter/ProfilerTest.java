@@ -0,0 +1,64 @@
+package com.myfirstlanguage.mfl.interpreter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.MflContext;
+import com.myfirstlanguage.mfl.MflEngine;
+
+public class ProfilerTest {
+
+    // Line to statements run, from the report's hottest lines.
+    private static Map<Integer, Long> lineCounts(String source) {
+        MflContext context = new MflEngine(MflEngine.Kind.TREE)
+                .newContext(OutputSink.of(new PrintStream(new ByteArrayOutputStream())), System.err);
+        Profiler profiler = new Profiler();
+        context.setProfiler(profiler);
+        context.eval(source);
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        profiler.writeReport(new PrintStream(report, true));
+        String text = report.toString();
+        Map<Integer, Long> counts = new TreeMap<>();
+        String table = text.substring(text.indexOf("Hottest lines"));
+        for (String row : table.split("\\R")) {
+            String[] columns = row.trim().split("\\s+");
+            if (columns.length == 2 && columns[0].matches("\\d+"))
+                counts.put(Integer.parseInt(columns[1]), Long.parseLong(columns[0]));
+        }
+        return counts;
+    }
+
+    @Test
+    public void countsStatementsByTheLineTheyStartOn() {
+        Map<Integer, Long> counts = lineCounts(String.join("\n",
+                "print 1 + 2;",
+                "var x = 0;",
+                "while (x < 3)",
+                "  x = x + 1;",
+                "if (true) print \"t\";",
+                "for (var i = 0; i < 2; i = i + 1) print i;",
+                "fun f() {",
+                "  return -(-1);",
+                "}",
+                "f(); f();"));
+
+        Map<Integer, Long> expected = new TreeMap<>();
+        expected.put(1, 1L); // folded down to print 3
+        expected.put(2, 1L);
+        expected.put(3, 1L);
+        expected.put(4, 3L);
+        expected.put(5, 1L); // the if is gone, the print is still on its line
+        expected.put(6, 4L); // the var, the loop and print twice
+        expected.put(7, 1L);
+        expected.put(8, 2L);
+        expected.put(10, 2L);
+        assertEquals(expected, counts);
+    }
+}
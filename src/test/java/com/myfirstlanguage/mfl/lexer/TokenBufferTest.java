@@ -0,0 +1,43 @@
+package com.myfirstlanguage.mfl.lexer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+
+public class TokenBufferTest {
+
+    // Streamed tokens have to match the ones lexed in one go, even once the buffer has grown.
+    @Test
+    public void streamedTokensMatchWholeFile() throws IOException {
+        String source = "print " + "(".repeat(3000) + "x" + ")".repeat(3000) + ";\nprint \"done\";\n";
+        ErrorReporter reporter = new ErrorReporter(OutputSink.of(System.out), System.err);
+        TokenBuffer whole = new Lexer(source, reporter).scanTokenBuffer();
+
+        Path file = Files.createTempFile("tokens", ".mfl");
+        try {
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            for (boolean mapped : new boolean[] { false, true }) {
+                try (FileChannel channel = FileChannel.open(file)) {
+                    TokenBuffer streamed = new Lexer(channel, mapped, reporter).streamTokens();
+                    for (int i = 0; i < whole.size(); i++) {
+                        assertEquals(whole.type(i), streamed.type(i));
+                        assertEquals(whole.line(i), streamed.line(i));
+                        assertEquals(whole.start(i), streamed.start(i));
+                        assertEquals(whole.length(i), streamed.length(i));
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
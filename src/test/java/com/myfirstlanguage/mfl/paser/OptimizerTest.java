@@ -0,0 +1,106 @@
+package com.myfirstlanguage.mfl.paser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.lexer.Lexer;
+
+/*
+ * What the optimizer leaves of each source, as AstPrinter shows it. Most of
+ * these are things it must not fold, as the folded tree would behave
+ * differently for some value.
+ */
+public class OptimizerTest {
+
+    private static void check(String source, String... expected) {
+        ErrorReporter reporter = new ErrorReporter(OutputSink.of(System.out),
+                new PrintStream(new ByteArrayOutputStream()));
+        List<Stmt> statements = new Parser(new Lexer(source, reporter).scanTokenBuffer(), reporter).parse();
+        assertFalse(reporter.hadError());
+        String printed = new AstPrinter().print(new Optimizer().optimize(statements));
+        assertEquals(expected.length == 0 ? "" : String.join("\n", expected) + "\n", printed);
+    }
+
+    @Test
+    public void foldsConstants() {
+        check("print 1 + 2 * 3;", "(print 7.0)");
+        check("print (4 - 6) / -2 >= 1;", "(print true)");
+        check("print \"a\" + \"b\";", "(print \"ab\")");
+        check("print !nil == (1 == \"1\");", "(print false)");
+    }
+
+    @Test
+    public void leavesRuntimeErrors() {
+        check("print \"a\" - 1;", "(print (- \"a\" 1.0))");
+        check("print \"a\" + 1;", "(print (+ \"a\" 1.0))");
+        check("print nil * 2;", "(print (* nil 2.0))");
+        check("print 1 < \"b\";", "(print (< 1.0 \"b\"))");
+        check("print -\"a\";", "(print (- \"a\"))");
+    }
+
+    @Test
+    public void identitiesNeedANumber() {
+        // x could be a string, which has to fail
+        check("print x * 1;", "(print (* x 1.0))");
+        check("print 1 * x;", "(print (* 1.0 x))");
+        check("print x / 1;", "(print (/ x 1.0))");
+        check("print x - 0;", "(print (- x 0.0))");
+        check("print (x + y) * 1;", "(print (* (+ x y) 1.0))");
+
+        check("print -x * 1;", "(print (- x))");
+        check("print 1 * (a - b);", "(print (- a b))");
+        check("print (a * b) / 1;", "(print (* a b))");
+        check("print (x + 1) - 0;", "(print (+ x 1.0))");
+    }
+
+    @Test
+    public void leavesAddingZero() {
+        // -0 + 0 is 0
+        check("print -x + 0;", "(print (+ (- x) 0.0))");
+    }
+
+    @Test
+    public void doubleNegationNeedsANumber() {
+        check("print -(-x);", "(print (- (- x)))");
+        check("print -(-(y * 2));", "(print (* y 2.0))");
+        check("print -(-(y + \"s\"));", "(print (- (- (+ y \"s\"))))");
+    }
+
+    @Test
+    public void shortCircuitsConstantLeftSides() {
+        check("print nil or x;", "(print x)");
+        check("print 1 or x;", "(print 1.0)");
+        check("print false and x;", "(print false)");
+        check("print true and x;", "(print x)");
+        check("print x or true;", "(print (or x true))");
+    }
+
+    @Test
+    public void dropsDeadIfBranches() {
+        check("if (false) print 1;");
+        check("if (nil) print 1; else print 2;", "(print 2.0)");
+        check("if (0) print 1; else print 2;", "(print 1.0)");
+        check("if (x) print 1; else if (false) print 2;", "(if x (print 1.0) (block))");
+    }
+
+    @Test
+    public void dropsDeadLoops() {
+        check("while (false) print 1;");
+        check("for (var i = 0; 1 > 2; i = i + 1) print i;", "(block (var i 0.0))");
+        check("while (x) if (false) print 1;", "(while x (block) nil)");
+        check("while (\"\") print 1;", "(while nil (print 1.0) nil)");
+    }
+
+    @Test
+    public void dropsConstantStatements() {
+        check("1 + 2;\nprint 3;", "(print 3.0)");
+    }
+}
@@ -0,0 +1,240 @@
+package com.myfirstlanguage.mfl.paser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.lexer.Lexer;
+
+/*
+ * What the parser makes of each source, as AstPrinter shows it, followed by
+ * the syntax errors it reports. The expected output is what the recursive
+ * descent parser gave before expressions were parsed by precedence climbing.
+ */
+public class ParserTest {
+    private static final int DEEP = 200000;
+
+    private static String parse(String source) {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        ErrorReporter reporter = new ErrorReporter(OutputSink.of(System.out), new PrintStream(err, true));
+        List<Stmt> statements = new Parser(new Lexer(source, reporter).scanTokenBuffer(), reporter).parse();
+        return new AstPrinter().print(statements) + err.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    private static void check(String source, String... expected) {
+        assertEquals(String.join("\n", expected) + "\n", parse(source));
+    }
+
+    // Parses without going through AstPrinter, which recurses.
+    private static List<Stmt> parseDeep(String source) {
+        ErrorReporter reporter = new ErrorReporter(OutputSink.of(System.out), System.err);
+        List<Stmt> statements = new Parser(new Lexer(source, reporter).scanTokenBuffer(), reporter).parse();
+        assertFalse(reporter.hadError());
+        assertEquals(1, statements.size());
+        return statements;
+    }
+
+    @Test
+    public void precedence() {
+        check("print 1 + 2 * 3 - 4 / 5;",
+                "(print (- (+ 1.0 (* 2.0 3.0)) (/ 4.0 5.0)))");
+        check("print -1 * -2 + -3;",
+                "(print (+ (* (- 1.0) (- 2.0)) (- 3.0)))");
+        check("print !!true == false;",
+                "(print (== (! (! true)) false))");
+        check("print 1 < 2 == 3 >= 4 != 5 <= 6 > 7;",
+                "(print (!= (== (< 1.0 2.0) (>= 3.0 4.0)) (> (<= 5.0 6.0) 7.0)))");
+        check("print !a or -b and c;",
+                "(print (or (! a) (and (- b) c)))");
+        check("print -(-x);\n"
+                + "print !(a == b);",
+                "(print (- (group (- x))))",
+                "(print (! (group (== a b))))");
+    }
+
+    @Test
+    public void leftAssociative() {
+        check("print 1 - 2 - 3;",
+                "(print (- (- 1.0 2.0) 3.0))");
+        check("print 8 / 4 / 2 * 1;",
+                "(print (* (/ (/ 8.0 4.0) 2.0) 1.0))");
+        check("print a or b and c or d;",
+                "(print (or (or a (and b c)) d))");
+        check("print a and b or c and d;",
+                "(print (or (and a b) (and c d)))");
+    }
+
+    @Test
+    public void assignment() {
+        check("a = b = c + 1;",
+                "(; (= a (= b (+ c 1.0))))");
+        check("x = y or z;",
+                "(; (= x (or y z)))");
+    }
+
+    @Test
+    public void groupingAndCalls() {
+        check("print (1 + 2) * (3 - (4));",
+                "(print (* (group (+ 1.0 2.0)) (group (- 3.0 (group 4.0)))))");
+        check("f(1)(2, 3)();\n"
+                + "print f(g(h(1)), -x);",
+                "(; (call (call (call f 1.0) 2.0 3.0)))",
+                "(print (call f (call g (call h 1.0)) (- x)))");
+        check("(f)(1)((2));",
+                "(; (call (call (group f) 1.0) (group 2.0)))");
+    }
+
+    @Test
+    public void statements() {
+        check("var s = \"a\" + \"b\";\n"
+                + "var n;\n"
+                + "print nil;",
+                "(var s (+ \"a\" \"b\"))",
+                "(var n)",
+                "(print nil)");
+        check("for (var i = 0; i < 10; i = i + 1) print i;\n"
+                + "for (;;) {}\n"
+                + "while (x) x = x - 1;",
+                "(block (var i 0.0) (while (< i 10.0) (print i) (= i (+ i 1.0))))",
+                "(while true (block) nil)",
+                "(while x (; (= x (- x 1.0))) nil)");
+        check("if (a) if (b) print 1; else print 2;",
+                "(if a (if b (print 1.0) (print 2.0)))");
+        check("fun add(a, b) { return a + b; }\n"
+                + "fun f() { return; }\n"
+                + "print add(1, 2);",
+                "(fun add (a b) (return (+ a b)))",
+                "(fun f () (return))",
+                "(print (call add 1.0 2.0))");
+        check("{ var a = 1; { print a; } }",
+                "(block (var a 1.0) (block (print a)))");
+    }
+
+    @Test
+    public void invalidAssignmentTargets() {
+        check("print 1 + 2 = 3;",
+                "(print (+ 1.0 2.0))",
+                "Error(line:1) =, Invalid assignment target.");
+        check("a + b = c;",
+                "(; (+ a b))",
+                "Error(line:1) =, Invalid assignment target.");
+        check("(a) = 1;",
+                "(; (group a))",
+                "Error(line:1) =, Invalid assignment target.");
+        check("-a = 1;",
+                "(; (- a))",
+                "Error(line:1) =, Invalid assignment target.");
+        check("print a = b or c = d;",
+                "(print (= a (or b c)))",
+                "Error(line:1) =, Invalid assignment target.");
+    }
+
+    @Test
+    public void syntaxErrors() {
+        check("print (1 + 2;",
+                "Error(line:1) ;, Expect ')' after expression.");
+        check("print (((1));",
+                "Error(line:1) ;, Expect ')' after expression.");
+        check("print 1 +;",
+                "Error(line:1) ;, Expect expression.");
+        check("print ;",
+                "Error(line:1) ;, Expect expression.");
+        check("print f(1, 2;",
+                "Error(line:1) ;, Expect ')' after arguments.");
+        check("f(1,);",
+                "Error(line:1) ), Expect expression.");
+        check("var = 1;\n"
+                + "print 2;",
+                "(print 2.0)",
+                "Error(line:1) =, Expect variable name.");
+        check("print 1 print 2;",
+                "Error(line:1) print, Expect ';' after value.");
+        check("print a.b;",
+                "Error(line:1) ., Expect ';' after value.");
+        check("print 1;\n"
+                + "print 2 +\n"
+                + "  3;\n"
+                + "var x = (4;\n"
+                + "print 5;",
+                "(print 1.0)",
+                "(print (+ 2.0 3.0))",
+                "(print 5.0)",
+                "Error(line:4) ;, Expect ')' after expression.");
+    }
+
+    @Test
+    public void tooManyArguments() {
+        List<String> arguments = new ArrayList<>();
+        List<String> printed = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            arguments.add("1");
+            printed.add("1.0");
+        }
+        check("f(" + String.join(", ", arguments) + ");",
+                "(; (call f " + String.join(" ", printed) + "))",
+                "Error(line:1) 1, Can't have more than 255 arguments.");
+
+        List<String> params = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            params.add("p" + i);
+        }
+        check("fun g(" + String.join(", ", params) + ") {}",
+                "(fun g (" + String.join(" ", params) + "))",
+                "Error(line:1) p255, Can't have more than 255 parameters.");
+    }
+
+    /* Nesting the old parser ran out of stack on. */
+
+    @Test
+    public void deepGrouping() {
+        Stmt.Print print = (Stmt.Print) parseDeep("print " + "(".repeat(DEEP) + "1" + ")".repeat(DEEP) + ";").get(0);
+        Expr expr = print.expression;
+        for (int i = 0; i < DEEP; i++) {
+            expr = ((Expr.Grouping) expr).expression;
+        }
+        assertEquals(1.0, ((Expr.Literal) expr).value);
+    }
+
+    @Test
+    public void deepPrefixOperators() {
+        Stmt.Print print = (Stmt.Print) parseDeep("print " + "-!".repeat(DEEP / 2) + "1;").get(0);
+        Expr expr = print.expression;
+        for (int i = 0; i < DEEP; i++) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            assertEquals(i % 2 == 0 ? "-" : "!", unary.operator.lexeme);
+            expr = unary.expression;
+        }
+        assertEquals(1.0, ((Expr.Literal) expr).value);
+    }
+
+    @Test
+    public void deepCalls() {
+        Stmt.Expression stmt = (Stmt.Expression) parseDeep("f(".repeat(DEEP) + ")".repeat(DEEP) + ";").get(0);
+        Expr expr = stmt.expression;
+        for (int i = 0; i < DEEP - 1; i++) {
+            Expr.Call call = (Expr.Call) expr;
+            assertEquals(1, call.arguments.size());
+            expr = call.arguments.get(0);
+        }
+        assertTrue(((Expr.Call) expr).arguments.isEmpty());
+    }
+
+    @Test
+    public void deepAssignment() {
+        Stmt.Expression stmt = (Stmt.Expression) parseDeep("a = ".repeat(DEEP) + "1;").get(0);
+        Expr expr = stmt.expression;
+        for (int i = 0; i < DEEP; i++) {
+            expr = ((Expr.Assign) expr).value;
+        }
+        assertEquals(1.0, ((Expr.Literal) expr).value);
+    }
+}
@@ -0,0 +1,161 @@
+package com.myfirstlanguage.mfl.paser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.myfirstlanguage.mfl.ErrorReporter;
+import com.myfirstlanguage.mfl.interpreter.OutputSink;
+import com.myfirstlanguage.mfl.interpreter.Resolver;
+import com.myfirstlanguage.mfl.lexer.Lexer;
+
+/*
+ * A damaged .mflc has to be treated like a stale one, so whatever happens
+ * to the bytes, read gives back null or a program and never throws.
+ */
+public class ProgramFileTest {
+    private static final String SOURCE = String.join("\n",
+            "var greeting = \"hello\";",
+            "fun counter(start) {",
+            "  var count = start;",
+            "  fun next() { count = count + 1; return count; }",
+            "  return next;",
+            "}",
+            "var next = counter(10);",
+            "for (var i = 0; i < 3; i = i + 1) print next();",
+            "if (greeting == \"hello\" and !false) print greeting + \" world\"; else print nil;",
+            "print -1.5 * 2 / 3 >= 0;");
+    private static final int HEADER = 4 + 4 + 32; // magic, version and hash
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Stmt> program;
+    private byte[] hash;
+    private byte[] bytes;
+    private Path file;
+
+    @Before
+    public void writeProgram() throws IOException {
+        ErrorReporter reporter = new ErrorReporter(OutputSink.of(System.out),
+                new PrintStream(new ByteArrayOutputStream()));
+        program = new Parser(new Lexer(SOURCE, reporter).scanTokenBuffer(), reporter).parse();
+        program = new Optimizer().optimize(program);
+        new Resolver(reporter).resolve(program);
+        assertEquals(false, reporter.hadError());
+
+        hash = ProgramFile.hash(SOURCE.getBytes(StandardCharsets.UTF_8));
+        file = folder.getRoot().toPath().resolve("test.mflc");
+        ProgramFile.write(file, hash, program);
+        bytes = Files.readAllBytes(file);
+    }
+
+    private List<Stmt> readBack(byte[] contents) throws IOException {
+        Files.write(file, contents);
+        return ProgramFile.read(file, hash);
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        assertNotNull(readBack(bytes));
+    }
+
+    @Test
+    public void keepsStatementLines() throws IOException {
+        List<Integer> written = new ArrayList<>();
+        lines(program, written);
+        List<Integer> read = new ArrayList<>();
+        lines(readBack(bytes), read);
+        assertEquals(written, read);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 4, 4, 5, 7, 8, 8, 8, 8, 9, 9, 9, 10), written);
+    }
+
+    private static void lines(List<Stmt> statements, List<Integer> lines) {
+        for (Stmt stmt : statements) {
+            lines(stmt, lines);
+        }
+    }
+
+    private static void lines(Stmt stmt, List<Integer> lines) {
+        if (stmt == null)
+            return;
+        lines.add(stmt.line);
+        if (stmt instanceof Stmt.Block) {
+            lines(((Stmt.Block) stmt).statements, lines);
+        } else if (stmt instanceof Stmt.Function) {
+            lines(((Stmt.Function) stmt).body, lines);
+        } else if (stmt instanceof Stmt.If) {
+            lines(((Stmt.If) stmt).thenBranch, lines);
+            lines(((Stmt.If) stmt).elseBranch, lines);
+        } else if (stmt instanceof Stmt.While) {
+            lines(((Stmt.While) stmt).body, lines);
+        }
+    }
+
+    @Test
+    public void differentSourceIsStale() throws IOException {
+        assertNull(ProgramFile.read(file, ProgramFile.hash(new byte[0])));
+    }
+
+    @Test
+    public void truncatedFileIsStale() throws IOException {
+        for (int length = 0; length < bytes.length; length++) {
+            assertNull("cut to " + length + " bytes", readBack(Arrays.copyOf(bytes, length)));
+        }
+    }
+
+    @Test
+    public void damagedByteNeverThrows() throws IOException {
+        for (int i = HEADER; i < bytes.length; i++) {
+            for (int damage : new int[] { 0x01, 0x80, 0xff }) {
+                byte[] damaged = bytes.clone();
+                damaged[i] ^= damage;
+                readBack(damaged);
+            }
+        }
+    }
+
+    @Test
+    public void hugeLengthIsStale() throws IOException {
+        // a string count of Integer.MAX_VALUE
+        assertNull(readBack(withStringCount(0xff, 0xff, 0xff, 0xff, 0x07)));
+    }
+
+    @Test
+    public void negativeLengthIsStale() throws IOException {
+        assertNull(readBack(withStringCount(0xff, 0xff, 0xff, 0xff, 0x0f)));
+    }
+
+    @Test
+    public void overlongVarintIsStale() throws IOException {
+        assertNull(readBack(withStringCount(0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01)));
+    }
+
+    // The file with its string count replaced by the given varint bytes.
+    private byte[] withStringCount(int... varint) {
+        int end = HEADER;
+        while ((bytes[end] & 0x80) != 0)
+            end++;
+        byte[] damaged = new byte[bytes.length - (end + 1 - HEADER) + varint.length];
+        System.arraycopy(bytes, 0, damaged, 0, HEADER);
+        for (int i = 0; i < varint.length; i++)
+            damaged[HEADER + i] = (byte) varint[i];
+        System.arraycopy(bytes, end + 1, damaged, HEADER + varint.length, bytes.length - end - 1);
+        return damaged;
+    }
+}